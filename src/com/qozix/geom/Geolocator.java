@@ -11,6 +11,17 @@ public class Geolocator {
 
 	private int width = 0;
 	private int height = 0;
+	
+	public Geolocator() {
+	}
+	
+	// a snapshot of another geolocator's bounds and size, e.g. to translate off the UI thread while the original changes
+	public Geolocator( Geolocator src ) {
+		topLeft = new Coordinate( src.topLeft );
+		bottomRight = new Coordinate( src.bottomRight );
+		width = src.width;
+		height = src.height;
+	}
 
 	public void setCoordinates( Coordinate tl, Coordinate br ) {
 		topLeft = tl;
@@ -78,6 +89,23 @@ public class Geolocator {
 		
 	}
 	
+	/**
+	 * Translates many coordinates at once, without allocating a Point or Coordinate for each
+	 * @param coordinates (double[]) pairs of values, in the same order as the Coordinate constructor (latitude, longitude)
+	 * @param pixels (int[]) array at least as long as coordinates, to receive the matching x, y pairs
+	 */
+	public void translate( double[] coordinates, int[] pixels ) {
+		double longitudanalDelta = bottomRight.longitude - topLeft.longitude;
+		double latitudanalDelta = bottomRight.latitude - topLeft.latitude;
+		int l = coordinates.length - 1;
+		for ( int i = 0; i < l; i += 2 ) {
+			double latitudanalFactor = ( coordinates[i] - topLeft.latitude ) / latitudanalDelta;
+			double longitudanalFactor = ( coordinates[i + 1] - topLeft.longitude ) / longitudanalDelta;
+			pixels[i] = (int) ( longitudanalFactor * width );
+			pixels[i + 1] = (int) ( latitudanalFactor * height );
+		}
+	}
+	
 	public ArrayList<Point> getPointsFromCoordinates( ArrayList<Coordinate> coordinates ) {
 		ArrayList<Point> points = new ArrayList<Point>();
 		for ( Coordinate coordinate : coordinates ) {
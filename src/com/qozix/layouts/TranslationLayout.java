@@ -1,6 +1,7 @@
 package com.qozix.layouts;
 
 import android.content.Context;
+import android.graphics.Rect;
 import android.view.View;
 
 /**
@@ -13,11 +14,23 @@ import android.view.View;
  * 
  * This is useful for positioning groups of markers, tooltips, or indicator views
  * without scaling, while the reference element(s) are scaled.
+ * 
+ * If a viewport is set, children positioned outside of it (plus a margin) are not
+ * measured or laid out, so layout passes only pay for what's near the screen.
  */
 
 public class TranslationLayout extends AnchorLayout {
 	
 	protected double scale = 1;
+	
+	private static final int DEFAULT_VIEWPORT_MARGIN = 256;
+	
+	// the visible region, in scaled pixels - empty means nothing is culled
+	protected Rect viewport = new Rect();
+	protected int viewportMargin = DEFAULT_VIEWPORT_MARGIN;
+	// the viewport as of the last layout pass, so a new one is only requested once enough has moved into range
+	private Rect laidOutViewport = new Rect();
+	private int culledChildCount;
 		
 	public TranslationLayout(Context context){
 		super(context);
@@ -40,11 +53,64 @@ public class TranslationLayout extends AnchorLayout {
 		return scale;
 	}
 	
+	/**
+	 * Sets the visible region, in scaled pixels.  Children positioned outside it (plus the margin) are skipped
+	 * during measure and layout.  A layout pass is only requested once the viewport has moved more than half the margin.
+	 * @param left (int) left edge of the viewport
+	 * @param top (int) top edge of the viewport
+	 * @param right (int) right edge of the viewport
+	 * @param bottom (int) bottom edge of the viewport
+	 */
+	public void setViewport(int left, int top, int right, int bottom){
+		viewport.set(left, top, right, bottom);
+		int threshold = viewportMargin / 2;
+		if (Math.abs(left - laidOutViewport.left) > threshold
+			|| Math.abs(top - laidOutViewport.top) > threshold
+			|| Math.abs(right - laidOutViewport.right) > threshold
+			|| Math.abs(bottom - laidOutViewport.bottom) > threshold) {
+			requestLayout();
+		}
+	}
+	
+	/**
+	 * Stops culling - every child is measured and laid out again
+	 */
+	public void clearViewport(){
+		viewport.setEmpty();
+		requestLayout();
+	}
+	
+	/**
+	 * Sets how far beyond the viewport (in pixels) children are still laid out.  This should be at least
+	 * as large as the children themselves, so none pop in at the edges.
+	 * @param margin (int) distance in pixels
+	 */
+	public void setViewportMargin(int margin){
+		viewportMargin = Math.max(margin, 0);
+		requestLayout();
+	}
+	
+	/**
+	 * @return (int) the number of children skipped by the last layout pass
+	 */
+	public int getCulledChildCount() {
+		return culledChildCount;
+	}
+	
+	// true if a child positioned at the (scaled) point given is too far from the viewport to lay out
+	protected boolean isCulled(int scaledX, int scaledY) {
+		if (viewport.isEmpty()) {
+			return false;
+		}
+		return scaledX < viewport.left - viewportMargin
+			|| scaledX > viewport.right + viewportMargin
+			|| scaledY < viewport.top - viewportMargin
+			|| scaledY > viewport.bottom + viewportMargin;
+	}
+	
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 
-		measureChildren(widthMeasureSpec, heightMeasureSpec);
-
 		int width = 0;
 		int height = 0;		
 
@@ -53,15 +119,20 @@ public class TranslationLayout extends AnchorLayout {
 			View child = getChildAt(i);
 			if (child.getVisibility() != GONE) {
 				TranslationLayout.LayoutParams lp = (TranslationLayout.LayoutParams) child.getLayoutParams();
+				// get offset position
+				int scaledX = (int) (0.5 + (lp.x * scale));
+				int scaledY = (int) (0.5 + (lp.y * scale));
+				// nothing to measure if it won't be laid out
+				if (isCulled(scaledX, scaledY)) {
+					continue;
+				}
+				measureChild(child, widthMeasureSpec, heightMeasureSpec);
 				// get anchor offsets
 				float aX = (lp.anchorX == null) ? anchorX : lp.anchorX;
 	            float aY = (lp.anchorY == null) ? anchorY : lp.anchorY;
 	            // offset dimensions by anchor values
 	            int computedWidth = (int) (child.getMeasuredWidth() * aX);
 	            int computedHeight = (int) (child.getMeasuredHeight() * aY);
-	            // get offset position
-	            int scaledX = (int) (0.5 + (lp.x * scale));
-	            int scaledY = (int) (0.5 + (lp.y * scale));
 	            // add computed dimensions to actual position
 	            int right = scaledX + computedWidth;
 				int bottom = scaledY + computedHeight;
@@ -81,17 +152,27 @@ public class TranslationLayout extends AnchorLayout {
 	
 	@Override
 	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+	    laidOutViewport.set(viewport);
+	    culledChildCount = 0;
 	    int count = getChildCount();
 	    for (int i = 0; i < count; i++) {
 	        View child = getChildAt(i);
 	        if (child.getVisibility() != GONE) {
 	            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-	            // get sizes
-	            int w = child.getMeasuredWidth();
-	            int h = child.getMeasuredHeight();
 	            // get offset position
 	            int scaledX = (int) (0.5 + (lp.x * scale));
 	            int scaledY = (int) (0.5 + (lp.y * scale));
+	            // out of range - collapse it (once) so it doesn't draw at a stale position
+	            if (isCulled(scaledX, scaledY)) {
+	                if (child.getWidth() > 0 || child.getHeight() > 0) {
+	                    child.layout(0, 0, 0, 0);
+	                }
+	                culledChildCount++;
+	                continue;
+	            }
+	            // get sizes
+	            int w = child.getMeasuredWidth();
+	            int h = child.getMeasuredHeight();
 	            // user child's layout params anchor position if set, otherwise default to anchor position of layout
 	            float aX = (lp.anchorX == null) ? anchorX : lp.anchorX;
 	            float aY = (lp.anchorY == null) ? anchorY : lp.anchorY;
@@ -60,6 +60,13 @@ public class ZoomPanLayout extends ViewGroup {
 	private Point doubleTapStartOffset = new Point();
 	private double doubleTapDestinationScale;
 
+	// unscaled centers for a tween that moves as it scales
+	private boolean isTweeningToCenter = false;
+	private double tweenStartCenterX;
+	private double tweenStartCenterY;
+	private double tweenDestinationCenterX;
+	private double tweenDestinationCenterY;
+
 	private Point firstFinger = new Point();
 	private Point secondFinger = new Point();
 	private Point lastFirstFinger = new Point();
@@ -97,6 +104,7 @@ public class ZoomPanLayout extends ViewGroup {
 		@Override
 		public void onTweenComplete() {
 			isTweening = false;
+			isTweeningToCenter = false;
 			for ( ZoomPanListener listener : zoomPanListeners ) {
 				listener.onZoomComplete( scale );
 				listener.onZoomPanEvent();
@@ -108,7 +116,11 @@ public class ZoomPanLayout extends ViewGroup {
 			double updatedChange = originalChange * eased;
 			double currentScale = historicalScale + updatedChange;
 			setScale( currentScale );
-			maintainScrollDuringScaleTween();
+			if ( isTweeningToCenter ) {
+				maintainCenterDuringScaleTween( eased );
+			} else {
+				maintainScrollDuringScaleTween();
+			}
 		}
 		@Override
 		public void onTweenStart() {
@@ -260,6 +272,14 @@ public class ZoomPanLayout extends ViewGroup {
 	public double getScale() {
 		return scale;
 	}
+
+	public double getMinScale() {
+		return minScale;
+	}
+
+	public double getMaxScale() {
+		return maxScale;
+	}
 	
 	/**
 	 * Returns whether the ZoomPanLayout is currently being flung
@@ -269,6 +289,14 @@ public class ZoomPanLayout extends ViewGroup {
 		return isBeingFlung;
 	}
 	
+	/**
+	 * Returns whether an animated scale (from smoothScaleTo, smoothScaleToAndCenter or a double tap) is running
+	 * @return (boolean) true if the ZoomPanLayout is currently animating its scale, false otherwise
+	 */
+	public boolean isTweening(){
+		return isTweening;
+	}
+	
 	/**
 	 * Returns the single child of the ZoomPanLayout, a ViewGroup that serves as an intermediary container
 	 * @return (View) The child view of the ZoomPanLayout that manages all contained views
@@ -400,6 +428,30 @@ public class ZoomPanLayout extends ViewGroup {
 		tween.setDuration( duration );
 		tween.start();
 	}
+
+	/**
+	 * Scales the ZoomPanLayout with animated progress, moving at the same time so the point provided ends up centered
+	 * @param x (double) x position to center on, in unscaled pixels
+	 * @param y (double) y position to center on, in unscaled pixels
+	 * @param destination (double) The final scale to animate to
+	 * @param duration (int) The duration (in milliseconds) of the animation
+	 * @return (boolean) true if the animation started, false if another was already running
+	 */
+	public boolean smoothScaleToAndCenter( double x, double y, double destination, int duration ) {
+		if ( isTweening ) {
+			return false;
+		}
+		destination = Math.max( destination, minScale );
+		destination = Math.min( destination, maxScale );
+		saveHistoricalScale();
+		tweenStartCenterX = ( getScrollX() + getWidth() * 0.5 ) / scale;
+		tweenStartCenterY = ( getScrollY() + getHeight() * 0.5 ) / scale;
+		tweenDestinationCenterX = x;
+		tweenDestinationCenterY = y;
+		isTweeningToCenter = true;
+		smoothScaleTo( destination, duration );
+		return true;
+	}
 	
 	
 	
@@ -566,6 +618,15 @@ public class ZoomPanLayout extends ViewGroup {
 		scrollToPoint( destinationScroll );
 	}
 
+	private void maintainCenterDuringScaleTween( double eased ) {
+		double x = tweenStartCenterX + ( tweenDestinationCenterX - tweenStartCenterX ) * eased;
+		double y = tweenStartCenterY + ( tweenDestinationCenterY - tweenStartCenterY ) * eased;
+		int sx = (int) ( x * scale - getWidth() * 0.5 );
+		int sy = (int) ( y * scale - getHeight() * 0.5 );
+		destinationScroll.set( sx, sy );
+		scrollToPoint( destinationScroll );
+	}
+
 	private void saveHistoricalPinchDistance() {
 		int dx = firstFinger.x - secondFinger.x;
 		int dy = firstFinger.y - secondFinger.y;
@@ -6,8 +6,11 @@ import java.util.LinkedList;
 import java.util.List;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.view.View;
 
 import com.qozix.geom.Coordinate;
@@ -15,10 +18,15 @@ import com.qozix.layouts.ZoomPanLayout;
 import com.qozix.mapview.geom.ManagedGeolocator;
 import com.qozix.mapview.hotspots.HotSpotManager;
 import com.qozix.mapview.markers.CalloutManager;
+import com.qozix.mapview.markers.ClusterManager;
+import com.qozix.mapview.markers.ClusterViewFactory;
+import com.qozix.mapview.markers.DrawnMarker;
+import com.qozix.mapview.markers.MarkerAdapter;
 import com.qozix.mapview.markers.MarkerManager;
 import com.qozix.mapview.paths.PathManager;
 import com.qozix.mapview.tiles.MapTileDecoder;
 import com.qozix.mapview.tiles.MapTileDecoderHttp;
+import com.qozix.mapview.tiles.MapTileOptionsDecoder;
 import com.qozix.mapview.tiles.TileManager;
 import com.qozix.mapview.tiles.TileRenderListener;
 import com.qozix.mapview.viewmanagers.DownsampleManager;
@@ -60,6 +68,8 @@ import com.qozix.mapview.zoom.ZoomManager;
 public class MapView extends ZoomPanLayout {
 
 	private static final String TAG = MapView.class.getSimpleName();
+	
+	private static final int REGION_ANIMATION_DURATION = 500;
 
 	private HashSet<MapEventListener> mapEventListeners = new HashSet<MapEventListener>();
 	
@@ -69,12 +79,16 @@ public class MapView extends ZoomPanLayout {
 	
 	private TileManager tileManager;
 	private MarkerManager markerManager;
+	private ClusterManager clusterManager;
 	private PathManager pathManager;
 	private CalloutManager calloutManager;
 	
 	private ManagedGeolocator geolocator;
 	private boolean isUsingGeolocation;
 	
+	// an animateToRegion call holds a render batch open until its tween completes
+	private boolean isAnimatingToRegion;
+	
 	/**
 	 * Constructor to use when creating a MapView from code.  Inflating from XML is not currently supported.
 	 * @param context (Context) The Context the MapView is running in, through which it can access the current theme, resources, etc.
@@ -86,12 +100,16 @@ public class MapView extends ZoomPanLayout {
 		tileManager = new TileManager( context, zoomManager );
 		super.addChild( tileManager );		
 		
+		downsampleManager.setMemoryBudget( tileManager.getMemoryBudget() );
+		
 		pathManager = new PathManager( context, zoomManager );
 		super.addChild( pathManager );
 		
 		markerManager = new MarkerManager( context, zoomManager );
 		super.addChild( markerManager );		
 		
+		clusterManager = new ClusterManager( markerManager, zoomManager );
+		
 		calloutManager = new CalloutManager( context, zoomManager );
 		super.addChild( calloutManager );
 
@@ -132,6 +150,52 @@ public class MapView extends ZoomPanLayout {
 		setScale( zoomManager.getScale() );
 	}
 	
+	/**
+	 * Sets how far past a zoom level boundary the scale must move before the MapView switches levels, so pinching
+	 * gently around a boundary doesn't swap tile sets back and forth.
+	 * @param band (double) fraction of the boundary scale, e.g., 0.05 (the default) for 5%; 0 switches exactly at the boundary
+	 */
+	public void setZoomHysteresis( double band ) {
+		zoomManager.setHysteresis( band );
+	}
+	
+	/**
+	 * Enables or disables continuous zoom.  When enabled, the tiles of the two zoom levels on either side of the
+	 * current scale are shown together, with the more detailed level faded in as the scale approaches it, rather
+	 * than one level popping in when the scale crosses a boundary.  This uses more memory and decoding while zooming.
+	 * @param enabled (boolean) true to cross-fade between adjacent levels, false (the default) to show one level at a time
+	 */
+	public void setContinuousZoomEnabled( boolean enabled ) {
+		tileManager.setContinuousZoomEnabled( enabled );
+	}
+	
+	/**
+	 * Returns the number of times the zoom level has changed through unlocked scale changes (e.g., a series of setScale calls)
+	 * since the count was last reset.  Zoom gestures and animations lock the level until they finish, so each adds
+	 * at most one switch, made as it ends.
+	 * @return (int) number of zoom level changes
+	 */
+	public int getZoomLevelSwitchCount() {
+		return zoomManager.getLevelSwitchCount();
+	}
+	
+	/**
+	 * Returns the number of times the zoom hysteresis band kept the current level, where the scale alone would
+	 * have changed it, since the count was last reset.  Together with getZoomLevelSwitchCount, this shows the effect
+	 * of setZoomHysteresis.
+	 * @return (int) number of level changes held off
+	 */
+	public int getZoomLevelHeldSwitchCount() {
+		return zoomManager.getHeldSwitchCount();
+	}
+	
+	/**
+	 * Resets the counts returned by getZoomLevelSwitchCount and getZoomLevelHeldSwitchCount
+	 */
+	public void resetZoomLevelSwitchCount() {
+		zoomManager.resetLevelSwitchCount();
+	}
+	
 	/**
 	 * Register a map event listener callback object for this MapView.
 	 * @param listener (MapEventListener) an implementation of the MapEventListener interface
@@ -161,6 +225,31 @@ public class MapView extends ZoomPanLayout {
 		tileManager.requestRender();
 	}
 	
+	/**
+	 * Request that the current tile set is re-examined and re-drawn as soon as possible, without
+	 * waiting to capture successive requests.  Best used when the viewport has come to rest.
+	 */
+	public void requestImmediateRender(){
+		tileManager.requestImmediateRender();
+	}
+	
+	/**
+	 * Returns counts of tile renders grouped by latency - the time from the earliest render request to the start of decoding.
+	 * Bucket i holds latencies up to {@link TileManager#getRenderLatencyBuckets()}[i] milliseconds, and the final bucket
+	 * holds anything longer.
+	 * @return (int[]) a copy of the latency histogram
+	 */
+	public int[] getRenderLatencyHistogram(){
+		return tileManager.getRenderLatencyHistogram();
+	}
+	
+	/**
+	 * Resets the counts in the render latency histogram
+	 */
+	public void resetRenderLatencyHistogram(){
+		tileManager.resetRenderLatencyHistogram();
+	}
+	
 	/**
 	 * Notify the map view that it may stop rendering tiles.  The rendering thread will be
 	 * attempt to be interrupted, but no guarantee is provided when.
@@ -169,6 +258,25 @@ public class MapView extends ZoomPanLayout {
 		tileManager.cancelRender();
 	}
 	
+	/**
+	 * Returns the fraction of tiles intersecting the viewport, at the current zoom level, that have been decoded and are showing.
+	 * @return (double) 0 (nothing showing yet) to 1 (fully covered)
+	 */
+	public double getTileCoverage() {
+		return tileManager.getCoverage();
+	}
+	
+	/**
+	 * Puts a strict ceiling on the memory used for tile bitmaps, shared between rendered tiles, the in-memory
+	 * cache and cached downsample images.  While a ceiling is set, tiles for zoom levels other than the current one are released as soon as the
+	 * current level is showing, and tiles that won't fit under the ceiling are skipped.
+	 * @param bytes (long) the ceiling in bytes, or 0 to remove it (the default)
+	 */
+	public void setMemoryCeiling( long bytes ) {
+		tileManager.setMemoryCeiling( bytes );
+		downsampleManager.trimToBudget();
+	}
+	
 	/**
 	 * Enables or disables map-tile image caching (in-memory and on-disk)
 	 * @param shouldCache (boolean) true to enable caching, false to disable it (default)
@@ -177,6 +285,36 @@ public class MapView extends ZoomPanLayout {
 		tileManager.setCacheEnabled( shouldCache );
 	}
 	
+	/**
+	 * Tiles displayed well below their native size (e.g., when zoom is locked, or below the smallest zoom level)
+	 * are decoded at a reduced resolution (1/2, 1/4...) to save memory.  The threshold is the largest ratio of
+	 * displayed size to decoded size that's allowed; the default of 1 never stretches a decoded tile.
+	 * Only decoders that implement {@link MapTileOptionsDecoder} will produce reduced resolution tiles.
+	 * @param threshold (double) the largest displayed-to-decoded size ratio allowed before decoding at a reduced resolution
+	 */
+	public void setTileSampleThreshold( double threshold ) {
+		tileManager.setSampleThreshold( threshold );
+	}
+
+	/**
+	 * Sets the preferred pixel format for tile bitmaps, carried through decoding and caching.
+	 * RGB_565 (the default) is cheapest for opaque imagery, ARGB_8888 preserves translucency (e.g., overlay tiles),
+	 * and ALPHA_8 is appropriate for masks.  Only decoders that implement {@link MapTileOptionsDecoder} honor this setting.
+	 * @param config (Bitmap.Config) the preferred config for tile bitmaps
+	 */
+	public void setTileBitmapConfig( Bitmap.Config config ) {
+		tileManager.setBitmapConfig( config );
+	}
+	
+	/**
+	 * Sets the preferred pixel format for downsample bitmaps.
+	 * Only decoders that implement {@link MapTileOptionsDecoder} honor this setting.
+	 * @param config (Bitmap.Config) the preferred config for downsample bitmaps
+	 */
+	public void setDownsampleBitmapConfig( Bitmap.Config config ) {
+		downsampleManager.setBitmapConfig( config );
+	}
+
 	/**
 	 * Sets a custom class to perform the decode operation when tile bitmaps are requested.
 	 * By default, a MapTileDecoder implementation is provided that renders bitmaps from the context's Assets,
@@ -432,6 +570,7 @@ public class MapView extends ZoomPanLayout {
 		int[] position = getPosition( x, y, absolute, true );
 		Point point = new Point( position[0], position[1] );
 		scrollToPoint( point );
+		requestImmediateRender();
 	}
 	
 	/**
@@ -459,6 +598,7 @@ public class MapView extends ZoomPanLayout {
 		int[] position = getPosition( x, y, absolute, true );
 		Point point = new Point( position[0], position[1] );
 		scrollToAndCenter( point );
+		requestImmediateRender();
 	}
 	
 	/**
@@ -515,10 +655,108 @@ public class MapView extends ZoomPanLayout {
 		slideToAndCenter( point );
 	}
 	
+	/**
+	 * Scales and scrolls the MapView so the region described by the two corners provided fills as much of the screen
+	 * as it can, centered.  The scale and scroll are applied together, and tiles are rendered once, for the result.
+	 * This signature will use pixel values if no geolocator is registered, otherwise it will compute the coordinates
+	 * based on the rectangle provided to the geolocation registration.  Equivalent to fitBounds( x1, y1, x2, y2, false )
+	 * @param x1 (double) x position of one corner of the region
+	 * @param y1 (double) y position of one corner of the region
+	 * @param x2 (double) x position of the opposite corner
+	 * @param y2 (double) y position of the opposite corner
+	 */
+	public void fitBounds( double x1, double y1, double x2, double y2 ) {
+		fitBounds( x1, y1, x2, y2, false );
+	}
+	
+	/**
+	 * Scales and scrolls the MapView so the region described by the two corners provided fills as much of the screen
+	 * as it can, centered.  The scale and scroll are applied together, and tiles are rendered once, for the result.
+	 * @param x1 (double) x position of one corner of the region
+	 * @param y1 (double) y position of one corner of the region
+	 * @param x2 (double) x position of the opposite corner
+	 * @param y2 (double) y position of the opposite corner
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 */
+	public void fitBounds( double x1, double y1, double x2, double y2, boolean absolute ) {
+		double[] frame = getRegionFrame( x1, y1, x2, y2, absolute );
+		tileManager.beginRenderBatch();
+		setScale( frame[0] );
+		double scale = getScale();
+		Point point = new Point( (int) ( frame[1] * scale ), (int) ( frame[2] * scale ) );
+		scrollToAndCenter( point );
+		tileManager.endRenderBatch();
+	}
+	
+	/**
+	 * Animates the MapView to the region described by the two corners provided, as fitBounds would frame it.
+	 * Scale and scroll move together, tiles for the destination are decoded while the animation runs, and tiles
+	 * are rendered once, when it completes.  This signature will use pixel values if no geolocator is registered,
+	 * otherwise it will compute the coordinates based on the rectangle provided to the geolocation registration.
+	 * Equivalent to animateToRegion( x1, y1, x2, y2, false )
+	 * @param x1 (double) x position of one corner of the region
+	 * @param y1 (double) y position of one corner of the region
+	 * @param x2 (double) x position of the opposite corner
+	 * @param y2 (double) y position of the opposite corner
+	 */
+	public void animateToRegion( double x1, double y1, double x2, double y2 ) {
+		animateToRegion( x1, y1, x2, y2, false );
+	}
+	
+	/**
+	 * Animates the MapView to the region described by the two corners provided, as fitBounds would frame it.
+	 * Scale and scroll move together, tiles for the destination are decoded while the animation runs, and tiles
+	 * are rendered once, when it completes.  Ignored if a zoom animation is already running.
+	 * @param x1 (double) x position of one corner of the region
+	 * @param y1 (double) y position of one corner of the region
+	 * @param x2 (double) x position of the opposite corner
+	 * @param y2 (double) y position of the opposite corner
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 */
+	public void animateToRegion( double x1, double y1, double x2, double y2, boolean absolute ) {
+		double[] frame = getRegionFrame( x1, y1, x2, y2, absolute );
+		tileManager.beginRenderBatch();
+		if ( !smoothScaleToAndCenter( frame[1], frame[2], frame[0], REGION_ANIMATION_DURATION ) ) {
+			tileManager.endRenderBatch();
+			return;
+		}
+		isAnimatingToRegion = true;
+		// start on the destination now, so it's (mostly) ready when the animation gets there
+		double scale = Math.max( getMinScale(), Math.min( frame[0], getMaxScale() ) );
+		int width = getWidth();
+		int height = getHeight();
+		int left = (int) ( frame[1] * scale - width * 0.5 );
+		int top = (int) ( frame[2] * scale - height * 0.5 );
+		left = Math.max( 0, Math.min( left, (int) ( getBaseWidth() * scale ) - width ) );
+		top = Math.max( 0, Math.min( top, (int) ( getBaseHeight() * scale ) - height ) );
+		Rect destination = new Rect( left, top, left + width, top + height );
+		tileManager.prefetch( scale, destination );
+	}
+	
 	//------------------------------------------------------------------------------------
 	// Marker, Callout and HotSpot API
 	//------------------------------------------------------------------------------------
 	
+	/**
+	 * Starts a batch of marker, callout and path changes.  Until the matching commitBatch, adding and removing them
+	 * doesn't request layouts or update zoom visibility - that's done once, when the batch is committed.  Useful when
+	 * adding many markers at once.  Batches can be nested; only the outermost commit applies them.
+	 */
+	public void beginBatch() {
+		markerManager.beginBatch();
+		calloutManager.beginBatch();
+		pathManager.beginBatch();
+	}
+	
+	/**
+	 * Applies the changes made since the matching beginBatch, in a single layout pass.
+	 */
+	public void commitBatch() {
+		markerManager.commitBatch();
+		calloutManager.commitBatch();
+		pathManager.commitBatch();
+	}
+	
 	/**
 	 * Markers added to this MapView will have anchor logic applied on the values provided here.
 	 * E.g., setMarkerAnchorPoints(0.5f, 1.0f) will have markers centered horizontally, positioned
@@ -659,6 +897,54 @@ public class MapView extends ZoomPanLayout {
 		markerManager.addMarkerAtZoom( view, position[0], position[1], aX, aY, zoom );
 		return view;
 	}
+	
+	/**
+	 * Add a marker to the the MapView that's shown at every zoom level from minZoom to maxZoom (inclusive), and hidden at all others.
+	 * No LayoutParams are required; the View will be laid out using WRAP_CONTENT for both width and height, and positioned based on the parameters
+	 * @param view (View) View instance to be added to the MapView
+	 * @param x (double) x position the View instance should be positioned at
+	 * @param y (double) y position the View instance should be positioned at
+	 * @param minZoom (int) the first zoom level (index) that this view should be shown at
+	 * @param maxZoom (int) the last zoom level (index) that this view should be shown at
+	 * @return (View) the View instance added to the MapView
+	 */
+	public View addMarkerAtZoomRange( View view, double x, double y, int minZoom, int maxZoom ){
+		return addMarkerAtZoomRange( view, x, y, minZoom, maxZoom, false );
+	}
+	
+	/**
+	 * Add a marker to the the MapView that's shown at every zoom level from minZoom to maxZoom (inclusive), and hidden at all others.
+	 * @param view (View) View instance to be added to the MapView
+	 * @param x (double) x position the View instance should be positioned at
+	 * @param y (double) y position the View instance should be positioned at
+	 * @param minZoom (int) the first zoom level (index) that this view should be shown at
+	 * @param maxZoom (int) the last zoom level (index) that this view should be shown at
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (View) the View instance added to the MapView
+	 */
+	public View addMarkerAtZoomRange( View view, double x, double y, int minZoom, int maxZoom, boolean absolute ){
+		int[] position = getPosition( x, y, absolute );
+		markerManager.addMarkerAtZoomRange( view, position[0], position[1], minZoom, maxZoom );
+		return view;
+	}
+	
+	/**
+	 * Add a marker to the the MapView that's shown at every zoom level from minZoom to maxZoom (inclusive), and hidden at all others.
+	 * @param view (View) View instance to be added to the MapView
+	 * @param x (double) x position the View instance should be positioned at
+	 * @param y (double) y position the View instance should be positioned at
+	 * @param aX (float) the x-axis position of a marker will be offset by a number equal to the negative width of the marker multiplied by this value 
+	 * @param aY (float) the y-axis position of a marker will be offset by a number equal to the negative height of the marker multiplied by this value
+	 * @param minZoom (int) the first zoom level (index) that this view should be shown at
+	 * @param maxZoom (int) the last zoom level (index) that this view should be shown at
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (View) the View instance added to the MapView
+	 */
+	public View addMarkerAtZoomRange( View view, double x, double y, float aX, float aY, int minZoom, int maxZoom, boolean absolute ){
+		int[] position = getPosition( x, y, absolute );
+		markerManager.addMarkerAtZoomRange( view, position[0], position[1], aX, aY, minZoom, maxZoom );
+		return view;
+	}
 
 	/**
 	 * Removes a marker View from the MapView's view tree.
@@ -666,11 +952,142 @@ public class MapView extends ZoomPanLayout {
 	 * @return (boolean) true if the view was in the view tree and was removed, false if it was not in the view tree
 	 */
 	public boolean removeMarker( View view ) {
-		if( markerManager.indexOfChild( view ) > -1 ) {
-			markerManager.removeView( view );
-			return true;
-		}
-		return false;
+		return markerManager.removeMarker( view );
+	}
+	
+	/**
+	 * Add a marker that's drawn directly by the marker layer, rather than being a View.  Drawn markers are much
+	 * lighter than View markers (many thousands cost about as much as one View), and use the same anchor logic,
+	 * but are drawn beneath View markers and only respond to taps through the listener set on the DrawnMarker.
+	 * @param drawable (Drawable) what to draw, at its intrinsic size - can be shared by any number of markers
+	 * @param x (double) x position the marker should be drawn at
+	 * @param y (double) y position the marker should be drawn at
+	 * @return (DrawnMarker) the marker, to remove it later or set a click listener
+	 */
+	public DrawnMarker addDrawnMarker( Drawable drawable, double x, double y ){
+		return addDrawnMarker( drawable, x, y, false );
+	}
+	
+	/**
+	 * Add a marker that's drawn directly by the marker layer, rather than being a View.
+	 * @param drawable (Drawable) what to draw, at its intrinsic size - can be shared by any number of markers
+	 * @param x (double) x position the marker should be drawn at
+	 * @param y (double) y position the marker should be drawn at
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (DrawnMarker) the marker, to remove it later or set a click listener
+	 */
+	public DrawnMarker addDrawnMarker( Drawable drawable, double x, double y, boolean absolute ){
+		int[] position = getPosition( x, y, absolute );
+		return markerManager.addDrawnMarker( drawable, position[0], position[1] );
+	}
+	
+	/**
+	 * Add a marker that's drawn directly by the marker layer, rather than being a View.
+	 * @param drawable (Drawable) what to draw, at its intrinsic size - can be shared by any number of markers
+	 * @param x (double) x position the marker should be drawn at
+	 * @param y (double) y position the marker should be drawn at
+	 * @param aX (float) the x-axis position of a marker will be offset by a number equal to the negative width of the marker multiplied by this value 
+	 * @param aY (float) the y-axis position of a marker will be offset by a number equal to the negative height of the marker multiplied by this value
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (DrawnMarker) the marker, to remove it later or set a click listener
+	 */
+	public DrawnMarker addDrawnMarker( Drawable drawable, double x, double y, float aX, float aY, boolean absolute ){
+		int[] position = getPosition( x, y, absolute );
+		return markerManager.addDrawnMarker( drawable, position[0], position[1], aX, aY );
+	}
+	
+	/**
+	 * Add a marker that's drawn directly by the marker layer, rather than being a View.  To share a bitmap across
+	 * many markers, wrap it in one BitmapDrawable and use the Drawable signature.
+	 * @param bitmap (Bitmap) what to draw
+	 * @param x (double) x position the marker should be drawn at
+	 * @param y (double) y position the marker should be drawn at
+	 * @return (DrawnMarker) the marker, to remove it later or set a click listener
+	 */
+	public DrawnMarker addDrawnMarker( Bitmap bitmap, double x, double y ){
+		return addDrawnMarker( new BitmapDrawable( getContext().getResources(), bitmap ), x, y, false );
+	}
+	
+	public boolean removeDrawnMarker( DrawnMarker marker ) {
+		return markerManager.removeDrawnMarker( marker );
+	}
+	
+	/**
+	 * Shows markers supplied by an adapter, rather than as individual Views.  Only the markers in or near the viewport
+	 * are bound to Views, which are recycled as they scroll out of range.  Adapter positions are in pixels
+	 * (see latLngToPixels to convert coordinates).
+	 * @param adapter (MarkerAdapter) the adapter to show markers from, or null to remove them
+	 */
+	public void setMarkerAdapter( MarkerAdapter adapter ) {
+		markerManager.setAdapter( adapter );
+	}
+	
+	/**
+	 * Add a marker that's grouped with nearby markers at each zoom level.  Where markers are close enough to overlap,
+	 * one View represents the group - see setClusterViewFactory.  Clusters are updated as markers are added and removed,
+	 * so changing zoom levels only swaps the clusters that are showing.
+	 * @param view (View) View instance to be added to the MapView
+	 * @param x (double) x position the View instance should be positioned at
+	 * @param y (double) y position the View instance should be positioned at
+	 * @return (View) the View instance added to the MapView
+	 */
+	public View addClusteredMarker( View view, double x, double y ){
+		return addClusteredMarker( view, x, y, false );
+	}
+	
+	/**
+	 * Add a marker that's grouped with nearby markers at each zoom level.
+	 * @param view (View) View instance to be added to the MapView
+	 * @param x (double) x position the View instance should be positioned at
+	 * @param y (double) y position the View instance should be positioned at
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (View) the View instance added to the MapView
+	 */
+	public View addClusteredMarker( View view, double x, double y, boolean absolute ){
+		int[] position = getPosition( x, y, absolute );
+		clusterManager.addMarker( view, position[0], position[1] );
+		return view;
+	}
+	
+	/**
+	 * Add a marker that's grouped with nearby markers at each zoom level.
+	 * @param view (View) View instance to be added to the MapView
+	 * @param x (double) x position the View instance should be positioned at
+	 * @param y (double) y position the View instance should be positioned at
+	 * @param aX (float) the x-axis position of a marker will be offset by a number equal to the negative width of the marker multiplied by this value 
+	 * @param aY (float) the y-axis position of a marker will be offset by a number equal to the negative height of the marker multiplied by this value
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (View) the View instance added to the MapView
+	 */
+	public View addClusteredMarker( View view, double x, double y, float aX, float aY, boolean absolute ){
+		int[] position = getPosition( x, y, absolute );
+		clusterManager.addMarker( view, position[0], position[1], aX, aY );
+		return view;
+	}
+	
+	/**
+	 * Removes a marker added with addClusteredMarker
+	 * @param view (View) the marker View to be removed
+	 * @return (boolean) true if it was a clustered marker and was removed
+	 */
+	public boolean removeClusteredMarker( View view ) {
+		return clusterManager.removeMarker( view );
+	}
+	
+	/**
+	 * Provides the Views that represent groups of clustered markers.  Without a factory, a group shows its first marker.
+	 * @param factory (ClusterViewFactory) the factory to get cluster Views from
+	 */
+	public void setClusterViewFactory( ClusterViewFactory factory ) {
+		clusterManager.setClusterViewFactory( factory );
+	}
+	
+	/**
+	 * Sets how close (in screen pixels) clustered markers have to be to be grouped.  Default is 64.
+	 * @param pixels (int) size of the grid cells markers are grouped by
+	 */
+	public void setClusterCellSize( int pixels ) {
+		clusterManager.setCellSize( pixels );
 	}
 	
 	/**
@@ -745,11 +1162,7 @@ public class MapView extends ZoomPanLayout {
 	 * @return (boolean) true if the view was in the view tree and was removed, false if it was not in the view tree
 	 */
 	public boolean removeCallout( View view ) {
-		if( calloutManager.indexOfChild( view ) > -1 ) {
-			calloutManager.removeView( view );
-			return true;
-		}
-		return false;
+		return calloutManager.removeMarker( view );
 	}
 	
 	/**
@@ -825,17 +1238,47 @@ public class MapView extends ZoomPanLayout {
 		return drawPathAtZoom( zoom, Arrays.asList( positions ) );
 	}
 	
+	/**
+	 * Draw a path (line) on the MapView that's shown at every zoom level from minZoom to maxZoom (inclusive), and hidden at all others.
+	 * @param minZoom (int) the first zoom level (index) that this path should be shown at
+	 * @param maxZoom (int) the last zoom level (index) that this path should be shown at
+	 * @param positions (List<double[]>) List of 2-element double arrays.  Each element represents a position; each position represents a point.
+	 * @return (View) the PathView instance that represents the line drawn.
+	 */
+	public View drawPathAtZoomRange( int minZoom, int maxZoom, List<double[]> positions ) {
+		LinkedList<Point> points = getPath( positions );
+		return pathManager.drawPathAtZoomRange( points, minZoom, maxZoom );
+	}
+	
+	/**
+	 * Draw a path (line) on the MapView from a flat array of positions.  Translating the positions and building the
+	 * path happen off the UI thread, so this is suited to very long paths (e.g., GPS tracks) - the View returned is
+	 * added right away, and the path appears in it once it's ready.
+	 * @param positions (double[]) pairs of values, one pair per point, in the same order as the 2-element arrays taken by drawPath
+	 * @return (View) the PathView instance that the path will be drawn in
+	 */
+	public View drawPathAsync( double[] positions ) {
+		return drawPathAsync( positions, false );
+	}
+	
+	/**
+	 * Draw a path (line) on the MapView from a flat array of positions, prepared off the UI thread.
+	 * @param positions (double[]) pairs of values, one pair per point, in the same order as the 2-element arrays taken by drawPath
+	 * @param absolute (boolean) true to always use pixel values and omit geolocation translation
+	 * @return (View) the PathView instance that the path will be drawn in
+	 */
+	public View drawPathAsync( double[] positions, boolean absolute ) {
+		boolean translate = !absolute && isUsingGeolocation;
+		return pathManager.drawPath( positions, translate ? geolocator : null );
+	}
+	
 	/**
 	 * Removes a path View from the MapView's view tree.
 	 * @param view The path View to be removed.
 	 * @return (boolean) true if the view was in the view tree and was removed, false if it was not in the view tree
 	 */
 	public boolean removePath( View view ) {
-		if( pathManager.indexOfChild( view ) > -1 ) {
-			pathManager.removeView( view );
-			return true;
-		}
-		return false;
+		return pathManager.removePath( view );
 	}
 	
 	//------------------------------------------------------------------------------------
@@ -843,11 +1286,11 @@ public class MapView extends ZoomPanLayout {
 	//------------------------------------------------------------------------------------
 	
 	/**
-	 * Clear bitmap tiles, appropriate for onPause.
-	 * (Currently not clearing downsample - might be worthwhile)
+	 * Clear bitmap tiles and cached downsample images, appropriate for onPause.
 	 */
 	public void clear() {
 		tileManager.clear();
+		downsampleManager.clear();
 	}
 	
 	/**
@@ -856,6 +1299,7 @@ public class MapView extends ZoomPanLayout {
 	 */
 	public void destroy() {
 		tileManager.clear();
+		downsampleManager.clear();
 		ViewCurator.clear( this );
 	}
 	
@@ -902,6 +1346,7 @@ public class MapView extends ZoomPanLayout {
 		int right = left + getWidth();
 		int bottom = top + getHeight();
 		zoomManager.updateViewport( left, top, right, bottom );
+		markerManager.setViewport( left, top, right, bottom );
 	}   
 	
 	// tell the tile renderer to not start any more tasks, but it can continue with any that are already running
@@ -909,6 +1354,20 @@ public class MapView extends ZoomPanLayout {
 		tileManager.suppressRender();
 	}
 
+	// scale that fits the region in the viewport, and the region's (unscaled) center - { scale, x, y }
+	private double[] getRegionFrame( double x1, double y1, double x2, double y2, boolean absolute ) {
+		int[] a = getPosition( x1, y1, absolute );
+		int[] b = getPosition( x2, y2, absolute );
+		double width = Math.max( Math.abs( b[0] - a[0] ), 1 );
+		double height = Math.max( Math.abs( b[1] - a[1] ), 1 );
+		double scale = Math.min( getWidth() / width, getHeight() / height );
+		double[] frame = new double[3];
+		frame[0] = scale;
+		frame[1] = ( a[0] + b[0] ) * 0.5;
+		frame[2] = ( a[1] + b[1] ) * 0.5;
+		return frame;
+	}
+	
 	// private geolocation helper
 	private int[] getPosition( double x, double y, boolean absolute ){
 		return getPosition( x, y, absolute, false );
@@ -962,6 +1421,7 @@ public class MapView extends ZoomPanLayout {
 		@Override
 		public void onScrollChanged( int x, int y ) {
 			updateViewport();
+			tileManager.onScrollChanged( x, y );
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onScrollChanged( x, y );
 			}
@@ -983,9 +1443,21 @@ public class MapView extends ZoomPanLayout {
 		}
 		@Override
 		public void onZoomComplete( double scale ) {
-			zoomManager.unlockZoom();
+			// a pinch that ends while a region animation is still running leaves the zoom locked, and the render
+			// to the animation's own completion
+			boolean isRegionAnimationRunning = isAnimatingToRegion && isTweening();
+			if ( !isRegionAnimationRunning ) {
+				zoomManager.unlockZoom();
+			}
 			zoomManager.setScale( scale );
-			requestRender();  // put this here instead of gesture listener so we catch animations and pinches
+			if ( !isRegionAnimationRunning ) {
+				requestImmediateRender();  // put this here instead of gesture listener so we catch animations and pinches
+				// this is the single render a region animation's batch was holding
+				if ( isAnimatingToRegion ) {
+					isAnimatingToRegion = false;
+					tileManager.endRenderBatch();
+				}
+			}
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onZoomComplete( scale );
 			}
@@ -1039,7 +1511,7 @@ public class MapView extends ZoomPanLayout {
 		@Override
 		public void onFingerUp( Point point ) {
 			if ( !isFlinging() ) {
-				requestRender();
+				requestImmediateRender();
 			}
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onFingerUp( point.x, point.y );
@@ -1054,7 +1526,7 @@ public class MapView extends ZoomPanLayout {
 		}
 		@Override
 		public void onFlingComplete( Point point ) {
-			requestRender();
+			requestImmediateRender();
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onFlingComplete( point.x, point.y );
 			}
@@ -1068,7 +1540,7 @@ public class MapView extends ZoomPanLayout {
 		}
 		@Override
 		public void onPinchComplete( Point point ) {
-			requestRender();
+			requestImmediateRender();
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onPinchComplete( point.x, point.y );
 			}
@@ -1085,14 +1557,17 @@ public class MapView extends ZoomPanLayout {
 			Point scaledPoint = new Point();
 			scaledPoint.x = (int) ( point.x / getScale() );
 			scaledPoint.y = (int) ( point.y / getScale() );
-			hotSpotManager.processHit( scaledPoint );
+			// drawn markers are on top of hotspots, so they get the first chance at a tap
+			if ( !markerManager.processHit( point.x, point.y ) ) {
+				hotSpotManager.processHit( scaledPoint );
+			}
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onTap( point.x, point.y );
 			}
 		}
 		@Override
 		public void onScrollComplete( Point point ) {
-			requestRender();
+			requestImmediateRender();
 			for ( MapEventListener listener : mapEventListeners ) {
 				listener.onScrollChanged( point.x, point.y );
 			}
@@ -6,6 +6,8 @@ import android.view.View;
 public class HotSpot {
 	public Rect area;
 	public View.OnClickListener listener;
+	// when it was added, relative to other spots - later spots are on top
+	int order;
 	public HotSpot( Rect r, View.OnClickListener l ){
 		area = r;
 		listener = l;
@@ -1,45 +1,79 @@
 package com.qozix.mapview.hotspots;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.view.View;
 
+import com.qozix.spatial.QuadTree;
+
 public class HotSpotManager {
 
-	public LinkedList<HotSpot> spots = new LinkedList<HotSpot>();
+	// spots, indexed by area, so hit tests and removals don't have to check every one
+	private QuadTree<HotSpot> index = new QuadTree<HotSpot>();
+	private ArrayList<HotSpot> candidates = new ArrayList<HotSpot>();
+	private int order;
+	
+	private static final Comparator<HotSpot> ADDED_ORDER = new Comparator<HotSpot>() {
+		@Override
+		public int compare( HotSpot a, HotSpot b ) {
+			return a.order < b.order ? -1 : ( a.order == b.order ? 0 : 1 );
+		}
+	};
 	
 	public void addHotSpot( Rect r, View.OnClickListener l ){
 		HotSpot hotSpot = new HotSpot( r, l );
-		spots.add( hotSpot );
+		hotSpot.order = order++;
+		index.add( hotSpot, r );
 	}
 	
 	public void removeHotSpot( Rect r, View.OnClickListener l ){
 		HotSpot comparison = new HotSpot( r, l );
-		Iterator<HotSpot> iterator = spots.iterator();
-		while(iterator.hasNext()){
-			HotSpot hotSpot = iterator.next();
-			if(comparison.equals( hotSpot )){
-				iterator.remove();
+		// a matching spot has the same area, so it's among those touching it
+		candidates.clear();
+		index.query( r, candidates );
+		for( HotSpot hotSpot : candidates ){
+			if( comparison.equals( hotSpot ) ){
+				index.remove( hotSpot );
 			}
 		}
+		candidates.clear();
+	}
+	
+	/**
+	 * @return (List<HotSpot>) a snapshot of the registered spots, in the order they were added - changes to it aren't reflected here
+	 */
+	public List<HotSpot> getHotSpots(){
+		ArrayList<HotSpot> spots = new ArrayList<HotSpot>( index.size() );
+		index.getItems( spots );
+		Collections.sort( spots, ADDED_ORDER );
+		return spots;
+	}
+	
+	public int getHotSpotCount(){
+		return index.size();
 	}
 	
 	public void clear(){
-		spots.clear();
+		index.clear();
 	}
 	
-	// work from end of list - match the last one added (equivalant to z-index)
+	// match the last one added (equivalant to z-index) among the spots near the point
 	private HotSpot getMatch( Point point ){
-		for(int i = spots.size(); i > 0; i--){
-			HotSpot hotSpot = spots.get( i - 1);
-			if(hotSpot.area.contains( point.x, point.y )){
-				return hotSpot;
+		candidates.clear();
+		index.query( point.x, point.y, candidates );
+		HotSpot match = null;
+		for( HotSpot hotSpot : candidates ){
+			if( hotSpot.area.contains( point.x, point.y ) && ( match == null || hotSpot.order > match.order ) ){
+				match = hotSpot;
 			}
 		}
-		return null;
+		candidates.clear();
+		return match;
 	}
 	
 	public void processHit( Point point ){
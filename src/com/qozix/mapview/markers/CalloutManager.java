@@ -2,7 +2,6 @@ package com.qozix.mapview.markers;
 
 import android.content.Context;
 import android.view.MotionEvent;
-import android.view.View;
 
 import com.qozix.mapview.zoom.ZoomManager;
 
@@ -13,10 +12,7 @@ public class CalloutManager extends MarkerManager {
 	}
 	
 	private void clear(){
-		while( getChildCount() > 0 ) {
-			View child = getChildAt( 0 );
-			removeView( child );
-		}
+		removeAllMarkers();
 	}
 	
 	@Override
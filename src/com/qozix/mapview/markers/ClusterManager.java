@@ -0,0 +1,320 @@
+package com.qozix.mapview.markers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+import android.view.View;
+
+import com.qozix.mapview.zoom.ZoomListener;
+import com.qozix.mapview.zoom.ZoomManager;
+import com.qozix.mapview.zoom.ZoomSetupListener;
+
+/**
+ * Groups markers by grid cell, separately for each zoom level, and shows one View per group in the MarkerManager.
+ * A cell is a fixed number of screen pixels across, so it covers more of the map at smaller levels.  Clusters are
+ * kept up to date as markers are added and removed, so a zoom level change only swaps one level's clusters for
+ * another's.  A cluster of one shows the marker itself; larger clusters show the View from the ClusterViewFactory
+ * (or, without one, the cluster's first marker).  Changes to clusters on the shown level are applied together,
+ * after the current run of adds and removes, and a cluster's View is rebound in place when the factory returns it again.
+ */
+public class ClusterManager implements ZoomListener, ZoomSetupListener {
+
+	private static final int DEFAULT_CELL_SIZE = 64;
+
+	private MarkerManager markerManager;
+	private ZoomManager zoomManager;
+	private ClusterViewFactory factory;
+
+	private int cellSize = DEFAULT_CELL_SIZE;
+	// cell size at each level, in unscaled pixels
+	private double[] levelCellSizes = new double[0];
+
+	private LinkedHashMap<View, Member> members = new LinkedHashMap<View, Member>();
+	// clusters by cell, one map per zoom level
+	private ArrayList<HashMap<Long, MarkerCluster>> levels = new ArrayList<HashMap<Long, MarkerCluster>>();
+
+	private int shownZoom = -1;
+	
+	// clusters on the shown level that have changed - refreshed together, once, after the current run of changes
+	private LinkedHashSet<MarkerCluster> dirty = new LinkedHashSet<MarkerCluster>();
+	private boolean refreshIsPosted;
+	private Runnable refreshRunnable = new Runnable() {
+		@Override
+		public void run() {
+			refreshIsPosted = false;
+			refreshDirty();
+		}
+	};
+
+	public ClusterManager( MarkerManager mm, ZoomManager zm ) {
+		markerManager = mm;
+		zoomManager = zm;
+		zoomManager.addZoomListener( this );
+		zoomManager.addzoomSetupListener( this );
+		rebuild();
+	}
+
+	public void setClusterViewFactory( ClusterViewFactory f ) {
+		factory = f;
+		// whatever's showing came from the old factory
+		int zoom = shownZoom;
+		hideLevel();
+		for ( HashMap<Long, MarkerCluster> level : levels ) {
+			for ( MarkerCluster cluster : level.values() ) {
+				cluster.view = null;
+			}
+		}
+		showLevel( zoom );
+	}
+
+	/**
+	 * Sets how close (in screen pixels) markers have to be to be grouped.  Every level is reclustered.
+	 * @param pixels (int) size of the grid cells, in screen pixels
+	 */
+	public void setCellSize( int pixels ) {
+		cellSize = Math.max( pixels, 1 );
+		rebuild();
+	}
+
+	public void addMarker( View v, int x, int y ) {
+		addMarker( v, x, y, null, null );
+	}
+
+	public void addMarker( View v, int x, int y, float aX, float aY ) {
+		addMarker( v, x, y, Float.valueOf( aX ), Float.valueOf( aY ) );
+	}
+
+	private void addMarker( View v, int x, int y, Float aX, Float aY ) {
+		removeMarker( v );
+		Member member = new Member( v, x, y, aX, aY, levels.size() );
+		members.put( v, member );
+		for ( int z = 0; z < levels.size(); z++ ) {
+			cluster( member, z );
+		}
+	}
+
+	public boolean removeMarker( View v ) {
+		Member member = members.remove( v );
+		if ( member == null ) {
+			return false;
+		}
+		for ( int z = 0; z < member.clusters.length; z++ ) {
+			MarkerCluster cluster = member.clusters[z];
+			cluster.remove( v, member.x, member.y );
+			if ( cluster.getCount() == 0 ) {
+				levels.get( z ).remove( member.keys[z] );
+			}
+			refresh( cluster );
+		}
+		return true;
+	}
+
+	public void clear() {
+		dirty.clear();
+		hideLevel();
+		members.clear();
+		for ( HashMap<Long, MarkerCluster> level : levels ) {
+			level.clear();
+		}
+	}
+
+	/**
+	 * @param zoom (int) the zoom level
+	 * @return (Collection<MarkerCluster>) the clusters at that level - not to be modified
+	 */
+	public Collection<MarkerCluster> getClusters( int zoom ) {
+		if ( zoom < 0 || zoom >= levels.size() ) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableCollection( levels.get( zoom ).values() );
+	}
+
+	public int getMarkerCount() {
+		return members.size();
+	}
+
+	// reclusters every marker - only needed when the levels or cell size change
+	private void rebuild() {
+		hideLevel();
+		// every cluster's about to be replaced
+		dirty.clear();
+		int count = zoomManager.getNumZoomLevels();
+		levels.clear();
+		levelCellSizes = new double[count];
+		for ( int z = 0; z < count; z++ ) {
+			levels.add( new HashMap<Long, MarkerCluster>() );
+			levelCellSizes[z] = cellSize / zoomManager.getZoomLevelScale( z );
+		}
+		for ( Member member : members.values() ) {
+			member.resize( count );
+			for ( int z = 0; z < count; z++ ) {
+				cluster( member, z );
+			}
+		}
+		showLevel( zoomManager.getZoom() );
+	}
+
+	private void cluster( Member member, int z ) {
+		long key = getCellKey( member.x, member.y, levelCellSizes[z] );
+		HashMap<Long, MarkerCluster> level = levels.get( z );
+		MarkerCluster cluster = level.get( key );
+		if ( cluster == null ) {
+			cluster = new MarkerCluster( z );
+			level.put( key, cluster );
+		}
+		cluster.add( member.view, member.x, member.y );
+		member.clusters[z] = cluster;
+		member.keys[z] = key;
+		refresh( cluster );
+	}
+
+	private static long getCellKey( int x, int y, double size ) {
+		long column = (long) Math.floor( x / size );
+		long row = (long) Math.floor( y / size );
+		return ( column << 32 ) | ( row & 0xFFFFFFFFL );
+	}
+
+	private void showLevel( int zoom ) {
+		if ( zoom < 0 || zoom >= levels.size() ) {
+			return;
+		}
+		shownZoom = zoom;
+		for ( MarkerCluster cluster : levels.get( zoom ).values() ) {
+			show( cluster );
+		}
+	}
+
+	private void hideLevel() {
+		if ( shownZoom > -1 && shownZoom < levels.size() ) {
+			for ( MarkerCluster cluster : levels.get( shownZoom ).values() ) {
+				hide( cluster );
+			}
+		}
+		shownZoom = -1;
+	}
+
+	// a cluster changed - if it's showing, it's shown as it is now once the current run of changes is done
+	private void refresh( MarkerCluster cluster ) {
+		if ( cluster.getZoom() != shownZoom ) {
+			return;
+		}
+		dirty.add( cluster );
+		if ( !refreshIsPosted ) {
+			refreshIsPosted = true;
+			markerManager.post( refreshRunnable );
+		}
+	}
+	
+	private void refreshDirty() {
+		for ( MarkerCluster cluster : dirty ) {
+			// the level may have changed since - showLevel took care of it
+			if ( cluster.getZoom() == shownZoom ) {
+				update( cluster );
+			}
+		}
+		dirty.clear();
+	}
+	
+	// brings a showing cluster up to date, leaving its View in the tree if it still has the same one
+	private void update( MarkerCluster cluster ) {
+		int count = cluster.getCount();
+		if ( count == 0 || cluster.displayed == null ) {
+			hide( cluster );
+			show( cluster );
+			return;
+		}
+		if ( count == 1 || factory == null ) {
+			// markers don't move, so it's only stale if it's a different marker
+			if ( cluster.displayed != cluster.getFirst() ) {
+				hide( cluster );
+				show( cluster );
+			}
+			return;
+		}
+		View view = factory.getClusterView( cluster, cluster.view );
+		if ( view != null && view == cluster.displayed ) {
+			// rebound in place - only the position can have changed
+			markerManager.moveMarker( view, cluster.getX(), cluster.getY() );
+			return;
+		}
+		hide( cluster );
+		cluster.view = view;
+		if ( view != null ) {
+			markerManager.addMarker( view, cluster.getX(), cluster.getY() );
+			cluster.displayed = view;
+		}
+	}
+
+	private void show( MarkerCluster cluster ) {
+		int count = cluster.getCount();
+		if ( count == 0 ) {
+			return;
+		}
+		if ( count == 1 || factory == null ) {
+			Member member = members.get( cluster.getFirst() );
+			if ( member.anchorX == null ) {
+				markerManager.addMarker( member.view, member.x, member.y );
+			} else {
+				markerManager.addMarker( member.view, member.x, member.y, member.anchorX, member.anchorY );
+			}
+			cluster.displayed = member.view;
+			return;
+		}
+		cluster.view = factory.getClusterView( cluster, cluster.view );
+		if ( cluster.view == null ) {
+			return;
+		}
+		markerManager.addMarker( cluster.view, cluster.getX(), cluster.getY() );
+		cluster.displayed = cluster.view;
+	}
+
+	private void hide( MarkerCluster cluster ) {
+		if ( cluster.displayed != null ) {
+			markerManager.removeMarker( cluster.displayed );
+			cluster.displayed = null;
+		}
+	}
+
+	@Override
+	public void onZoomLevelChanged( int oldZoom, int newZoom ) {
+		hideLevel();
+		showLevel( newZoom );
+	}
+
+	@Override
+	public void onZoomScaleChanged( double scale ) {
+
+	}
+
+	@Override
+	public void onZoomLevelAdded() {
+		rebuild();
+	}
+
+	private static class Member {
+		View view;
+		int x;
+		int y;
+		Float anchorX;
+		Float anchorY;
+		// the cluster (and its cell) this marker belongs to, at each level
+		MarkerCluster[] clusters;
+		long[] keys;
+		Member( View v, int px, int py, Float aX, Float aY, int levelCount ) {
+			view = v;
+			x = px;
+			y = py;
+			anchorX = aX;
+			anchorY = aY;
+			resize( levelCount );
+		}
+		void resize( int levelCount ) {
+			clusters = new MarkerCluster[levelCount];
+			keys = new long[levelCount];
+		}
+	}
+}
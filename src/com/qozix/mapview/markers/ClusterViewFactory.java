@@ -0,0 +1,13 @@
+package com.qozix.mapview.markers;
+
+import android.view.View;
+
+public interface ClusterViewFactory {
+	/**
+	 * Provides the View that represents a cluster of two or more markers.
+	 * @param cluster (MarkerCluster) the cluster to show - its count and position are current
+	 * @param convertView (View) the View this cluster showed last time, to update and return if possible, or null
+	 * @return (View) the View to show for the cluster
+	 */
+	public View getClusterView( MarkerCluster cluster, View convertView );
+}
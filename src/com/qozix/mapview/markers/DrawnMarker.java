@@ -0,0 +1,50 @@
+package com.qozix.mapview.markers;
+
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+/**
+ * A marker that's drawn by its MarkerManager rather than being a View of its own - just a position, anchors and
+ * a Drawable.  Anchors work as they do for View markers: null uses the MarkerManager's default anchors.
+ */
+public class DrawnMarker {
+
+	int x;
+	int y;
+	Float anchorX;
+	Float anchorY;
+	Drawable drawable;
+	View.OnClickListener listener;
+	// when it was added, relative to other drawn markers - later markers are drawn on top
+	int order;
+	// the last draw that found it near the viewport
+	int pass;
+
+	DrawnMarker( Drawable d, int px, int py, Float aX, Float aY ) {
+		drawable = d;
+		x = px;
+		y = py;
+		anchorX = aX;
+		anchorY = aY;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public Drawable getDrawable() {
+		return drawable;
+	}
+
+	/**
+	 * Sets a listener that's called when the marker is tapped.  The View passed to it is null.
+	 * @param l (View.OnClickListener) listener to call, or null
+	 */
+	public void setOnClickListener( View.OnClickListener l ) {
+		listener = l;
+	}
+}
@@ -0,0 +1,75 @@
+package com.qozix.mapview.markers;
+
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.view.View;
+
+import com.qozix.mapview.viewmanagers.ViewFactory;
+
+/**
+ * Supplies marker data to a MarkerManager, which only creates Views for markers in or near the viewport and
+ * recycles them as they move out of range.  Positions are in (unscaled) pixels.  Markers of each view type
+ * share a pool of Views, so bindView should fully reset a View it's given.
+ */
+public abstract class MarkerAdapter {
+
+	private DataSetObservable observable = new DataSetObservable();
+
+	public abstract int getCount();
+
+	public abstract int getX( int position );
+
+	public abstract int getY( int position );
+
+	/**
+	 * @param position (int) the marker's position in the data set
+	 * @return (Float) the marker's x anchor, or null to use the MarkerManager's default
+	 */
+	public Float getAnchorX( int position ) {
+		return null;
+	}
+
+	public Float getAnchorY( int position ) {
+		return null;
+	}
+
+	public int getViewTypeCount() {
+		return 1;
+	}
+
+	/**
+	 * @param position (int) the marker's position in the data set
+	 * @return (int) the marker's view type, from 0 to getViewTypeCount() - 1
+	 */
+	public int getItemViewType( int position ) {
+		return 0;
+	}
+
+	/**
+	 * @param type (int) the view type
+	 * @return (ViewFactory) the factory that creates Views of that type, when none are available for reuse
+	 */
+	public abstract ViewFactory<? extends View> getViewFactory( int type );
+
+	/**
+	 * Sets up a View (new or recycled) to show the marker at the position given
+	 * @param position (int) the marker's position in the data set
+	 * @param view (View) the View to bind
+	 */
+	public abstract void bindView( int position, View view );
+
+	/**
+	 * Call when markers are added, removed, moved or changed, so the MarkerManager can rebind them
+	 */
+	public void notifyDataSetChanged() {
+		observable.notifyChanged();
+	}
+
+	public void registerDataSetObserver( DataSetObserver observer ) {
+		observable.registerObserver( observer );
+	}
+
+	public void unregisterDataSetObserver( DataSetObserver observer ) {
+		observable.unregisterObserver( observer );
+	}
+}
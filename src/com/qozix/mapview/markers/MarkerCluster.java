@@ -0,0 +1,72 @@
+package com.qozix.mapview.markers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.view.View;
+
+/**
+ * A group of markers that share a grid cell at one zoom level.  Positions are in unscaled pixels.
+ */
+public class MarkerCluster {
+
+	private int zoom;
+	private ArrayList<View> markers = new ArrayList<View>();
+	private long sumX;
+	private long sumY;
+
+	// the cluster's own View (from the factory), kept for reuse, and whatever's showing for it now
+	View view;
+	View displayed;
+
+	MarkerCluster( int z ) {
+		zoom = z;
+	}
+
+	void add( View marker, int x, int y ) {
+		markers.add( marker );
+		sumX += x;
+		sumY += y;
+	}
+
+	void remove( View marker, int x, int y ) {
+		if ( markers.remove( marker ) ) {
+			sumX -= x;
+			sumY -= y;
+		}
+	}
+
+	View getFirst() {
+		return markers.get( 0 );
+	}
+
+	public int getZoom() {
+		return zoom;
+	}
+
+	public int getCount() {
+		return markers.size();
+	}
+
+	/**
+	 * @return (List<View>) the markers in this cluster - not to be modified
+	 */
+	public List<View> getMarkers() {
+		return Collections.unmodifiableList( markers );
+	}
+
+	/**
+	 * @return (int) x position of the cluster (the average of its markers' positions)
+	 */
+	public int getX() {
+		return markers.size() == 0 ? 0 : (int) ( sumX / markers.size() );
+	}
+
+	/**
+	 * @return (int) y position of the cluster (the average of its markers' positions)
+	 */
+	public int getY() {
+		return markers.size() == 0 ? 0 : (int) ( sumY / markers.size() );
+	}
+}
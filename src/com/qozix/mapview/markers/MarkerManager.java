@@ -1,12 +1,25 @@
 package com.qozix.mapview.markers;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+
 import android.content.Context;
+import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
 import android.view.View;
 
 import com.qozix.layouts.TranslationLayout;
+import com.qozix.mapview.viewmanagers.ViewFactory;
+import com.qozix.mapview.viewmanagers.ViewPool;
 import com.qozix.mapview.viewmanagers.ViewSetManager;
 import com.qozix.mapview.zoom.ZoomListener;
 import com.qozix.mapview.zoom.ZoomManager;
+import com.qozix.spatial.QuadTree;
 
 /*
  * TODO: need to consolidate positioning logic - works as is, but does too many unnecessary and possibly messy calculations
@@ -16,9 +29,67 @@ import com.qozix.mapview.zoom.ZoomManager;
 
 public class MarkerManager extends TranslationLayout implements ZoomListener {
 
+	// markers further than this many viewports beyond the edges are detached from the view tree until they're near again
+	private static final float DETACH_DISTANCE = 1f;
+	// the viewport has to move by this fraction of its size (or scale by this fraction) before detached markers are checked again
+	private static final float DETACH_THRESHOLD = 0.25f;
+
 	private ZoomManager zoomManager;
 	private ViewSetManager viewSetManager = new ViewSetManager();
 	
+	// marker anchors, in unscaled pixels, so markers near the viewport are found without checking every one
+	private QuadTree<View> index = new QuadTree<View>();
+	private ArrayList<View> nearby = new ArrayList<View>();
+	private HashSet<View> nearbyLookup = new HashSet<View>();
+	
+	private HashSet<View> detached = new HashSet<View>();
+	private Rect detachedAt = new Rect();
+	private double detachedAtScale = 1;
+	// forces the next pass, regardless of how far things have moved
+	private boolean nearbyIsDirty;
+	
+	// markers from an adapter - only those near the viewport are bound to Views, which are pooled by view type
+	private MarkerAdapter adapter;
+	private ArrayList<ViewPool<? extends View>> pools = new ArrayList<ViewPool<? extends View>>();
+	private QuadTree<AdaptedMarker> adaptedIndex = new QuadTree<AdaptedMarker>();
+	private ArrayList<AdaptedMarker> adaptedNearby = new ArrayList<AdaptedMarker>();
+	private HashSet<AdaptedMarker> bound = new HashSet<AdaptedMarker>();
+	private int pass;
+	
+	// markers drawn in this layer's own draw pass, instead of being Views
+	private QuadTree<DrawnMarker> drawnIndex = new QuadTree<DrawnMarker>();
+	private ArrayList<DrawnMarker> drawn = new ArrayList<DrawnMarker>();
+	// every drawn marker, in draw order, so a draw only has to filter - not sort - what the index finds
+	private ArrayList<DrawnMarker> drawnOrdered = new ArrayList<DrawnMarker>();
+	private int drawPass;
+	// the (scaled) area the last draw covered - a display list only holds what was drawn, so it's redrawn once the viewport leaves it
+	private Rect drawnArea = new Rect();
+	private Rect clip = new Rect();
+	private Rect drawnBounds = new Rect();
+	private int drawnOrder;
+	// the largest drawn marker so far, so hit tests know how far from a tap to look for anchors
+	private int maximumDrawnWidth;
+	private int maximumDrawnHeight;
+	
+	// while batching, markers go in and out of the tree without requesting layouts, and filtering waits for the commit
+	private int batchDepth;
+	private boolean filterIsPending;
+	
+	private static final Comparator<DrawnMarker> DRAWN_ORDER = new Comparator<DrawnMarker>() {
+		@Override
+		public int compare( DrawnMarker a, DrawnMarker b ) {
+			return a.order < b.order ? -1 : ( a.order == b.order ? 0 : 1 );
+		}
+	};
+	
+	private DataSetObserver adapterObserver = new DataSetObserver() {
+		@Override
+		public void onChanged() {
+			unbindAll();
+			indexAdapter();
+		}
+	};
+	
 	public MarkerManager( Context context, ZoomManager zm ) {
 		super( context );
 		zoomManager = zm;
@@ -27,36 +98,493 @@ public class MarkerManager extends TranslationLayout implements ZoomListener {
 	
 	public View addMarker( View v, int x, int y ){
 		LayoutParams lp = new LayoutParams( LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT, x, y );
-		addView( v, lp );
+		addMarkerView( v, lp );
+		index.add( v, x, y );
 		return v;
 	}
 
 	public View addMarker( View v, int x, int y, float aX, float aY ) {
 		LayoutParams lp = new LayoutParams( LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT, x, y, aX, aY );
-		addView( v, lp );
+		addMarkerView( v, lp );
+		index.add( v, x, y );
 		return v;
 	}
 	
 	public View addMarkerAtZoom( View v, int x, int y, int z ){
+		return addMarkerAtZoomRange( v, x, y, z, z );
+	}
+	
+	public View addMarkerAtZoom( View v, int x, int y, float aX, float aY, int z ) {
+		return addMarkerAtZoomRange( v, x, y, aX, aY, z, z );
+	}
+	
+	public View addMarkerAtZoomRange( View v, int x, int y, int min, int max ){
 		addMarker( v, x, y );
-		viewSetManager.addViewAtLevel( v, z );
+		viewSetManager.addViewAtLevels( v, min, max );
 		filterMarkers();
 		return v;
 	}
 	
-	public View addMarkerAtZoom( View v, int x, int y, float aX, float aY, int z ) {
+	public View addMarkerAtZoomRange( View v, int x, int y, float aX, float aY, int min, int max ) {
 		addMarker( v, x, y, aX, aY );
-		viewSetManager.addViewAtLevel( v, z );
+		viewSetManager.addViewAtLevels( v, min, max );
 		filterMarkers();
 		return v;
 	}
 	
+	/**
+	 * Moves a marker added through addMarker, without taking it out of the view tree
+	 * @param v (View) the marker to move
+	 * @param x (int) new x position
+	 * @param y (int) new y position
+	 * @return (boolean) true if the marker was found and moved
+	 */
+	public boolean moveMarker( View v, int x, int y ) {
+		if ( !index.contains( v ) ) {
+			return false;
+		}
+		LayoutParams lp = (LayoutParams) v.getLayoutParams();
+		lp.x = x;
+		lp.y = y;
+		index.add( v, x, y );
+		// it may have moved nearer to or further from the viewport
+		nearbyIsDirty = true;
+		if ( batchDepth == 0 ) {
+			requestLayout();
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes a marker, whether it's currently attached or detached for being far from the viewport
+	 * @param v (View) the marker to remove
+	 * @return (boolean) true if the marker was found and removed
+	 */
+	public boolean removeMarker( View v ) {
+		index.remove( v );
+		viewSetManager.removeView( v );
+		if ( detached.remove( v ) ) {
+			removeDetachedView( v, false );
+			return true;
+		}
+		if ( indexOfChild( v ) > -1 ) {
+			if ( batchDepth > 0 ) {
+				removeViewInLayout( v );
+			} else {
+				removeView( v );
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes every marker and drawn marker from this layer.  An adapter stays set - its Views are recycled here,
+	 * and bound again on the next pass over the viewport.  Use setAdapter( null ) to remove its markers too.
+	 */
+	public void removeAllMarkers() {
+		unbindAll();
+		nearbyIsDirty = true;
+		removeAllDrawnMarkers();
+		for ( View v : detached ) {
+			removeDetachedView( v, false );
+		}
+		detached.clear();
+		index.clear();
+		viewSetManager.clear();
+		if ( batchDepth > 0 ) {
+			removeAllViewsInLayout();
+		} else {
+			removeAllViews();
+		}
+	}
+	
+	/**
+	 * Starts a batch of changes.  Until the matching commitBatch, adding and removing markers doesn't request a
+	 * layout, and zoom visibility isn't updated - both happen once, when the batch is committed.
+	 * Batches can be nested; only the outermost commit applies them.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+	
+	public void commitBatch() {
+		if ( batchDepth == 0 ) {
+			return;
+		}
+		batchDepth--;
+		if ( batchDepth > 0 ) {
+			return;
+		}
+		if ( filterIsPending ) {
+			filterIsPending = false;
+			filterMarkers();
+		}
+		// markers added far from the viewport can come out of the tree in the same pass
+		nearbyIsDirty = true;
+		updateNearby();
+		requestLayout();
+		invalidate();
+	}
+	
+	public boolean getIsBatching() {
+		return batchDepth > 0;
+	}
+	
+	private void addMarkerView( View v, LayoutParams lp ) {
+		if ( batchDepth > 0 ) {
+			addViewInLayout( v, -1, lp, true );
+		} else {
+			addView( v, lp );
+		}
+	}
+	
+	public int getDetachedMarkerCount() {
+		return detached.size();
+	}
+	
+	/**
+	 * Shows markers from an adapter.  Only markers in or near the viewport are bound to Views, and Views are
+	 * recycled (through a ViewPool for each view type) as their markers move out of range.
+	 * @param a (MarkerAdapter) the adapter to show markers from, or null to remove the current adapter's markers
+	 */
+	public void setAdapter( MarkerAdapter a ) {
+		if ( adapter != null ) {
+			adapter.unregisterDataSetObserver( adapterObserver );
+		}
+		unbindAll();
+		adapter = a;
+		pools.clear();
+		if ( adapter != null ) {
+			adapter.registerDataSetObserver( adapterObserver );
+			for ( int type = 0; type < adapter.getViewTypeCount(); type++ ) {
+				pools.add( createPool( adapter.getViewFactory( type ) ) );
+			}
+		}
+		indexAdapter();
+	}
+	
+	public MarkerAdapter getAdapter() {
+		return adapter;
+	}
+	
+	/**
+	 * @return (int) the number of adapter markers currently bound to Views
+	 */
+	public int getBoundMarkerCount() {
+		return bound.size();
+	}
+	
+	/**
+	 * Adds a marker that's drawn by this layer, rather than being a View - thousands cost no more than one View.
+	 * Drawn markers are drawn beneath View markers, in the order they're added.
+	 * @param d (Drawable) what to draw, at its intrinsic size - can be shared by any number of markers
+	 * @param x (int) x position of the marker
+	 * @param y (int) y position of the marker
+	 * @return (DrawnMarker) the marker, to remove it or set a click listener
+	 */
+	public DrawnMarker addDrawnMarker( Drawable d, int x, int y ) {
+		return addDrawnMarker( new DrawnMarker( d, x, y, null, null ) );
+	}
+	
+	public DrawnMarker addDrawnMarker( Drawable d, int x, int y, float aX, float aY ) {
+		return addDrawnMarker( new DrawnMarker( d, x, y, aX, aY ) );
+	}
+	
+	private DrawnMarker addDrawnMarker( DrawnMarker marker ) {
+		marker.order = drawnOrder++;
+		drawnIndex.add( marker, marker.x, marker.y );
+		drawnOrdered.add( marker );
+		maximumDrawnWidth = Math.max( maximumDrawnWidth, marker.drawable.getIntrinsicWidth() );
+		maximumDrawnHeight = Math.max( maximumDrawnHeight, marker.drawable.getIntrinsicHeight() );
+		invalidate();
+		return marker;
+	}
+	
+	public boolean removeDrawnMarker( DrawnMarker marker ) {
+		if ( drawnIndex.remove( marker ) ) {
+			int position = Collections.binarySearch( drawnOrdered, marker, DRAWN_ORDER );
+			if ( position > -1 ) {
+				drawnOrdered.remove( position );
+			}
+			invalidate();
+			return true;
+		}
+		return false;
+	}
+	
+	public void removeAllDrawnMarkers() {
+		drawnIndex.clear();
+		drawnOrdered.clear();
+		invalidate();
+	}
+	
+	/**
+	 * Finds the topmost drawn marker at a point, and calls its click listener
+	 * @param x (int) x position of the tap, in scaled pixels
+	 * @param y (int) y position of the tap, in scaled pixels
+	 * @return (boolean) true if a drawn marker with a listener was hit
+	 */
+	public boolean processHit( int x, int y ) {
+		if ( drawnIndex.size() == 0 || scale <= 0 ) {
+			return false;
+		}
+		// anchors are indexed as points, so look as far out as the largest marker could reach
+		int ux = (int) ( x / scale );
+		int uy = (int) ( y / scale );
+		int reachX = (int) Math.ceil( maximumDrawnWidth / scale );
+		int reachY = (int) Math.ceil( maximumDrawnHeight / scale );
+		drawn.clear();
+		drawnIndex.query( ux - reachX, uy - reachY, ux + reachX, uy + reachY, drawn );
+		DrawnMarker match = null;
+		for ( DrawnMarker marker : drawn ) {
+			getDrawnBounds( marker, drawnBounds );
+			if ( drawnBounds.contains( x, y ) && ( match == null || marker.order > match.order ) ) {
+				match = marker;
+			}
+		}
+		drawn.clear();
+		if ( match == null || match.listener == null ) {
+			return false;
+		}
+		match.listener.onClick( null );
+		return true;
+	}
+	
+	// same positioning as TranslationLayout uses for its children
+	private void getDrawnBounds( DrawnMarker marker, Rect bounds ) {
+		int w = marker.drawable.getIntrinsicWidth();
+		int h = marker.drawable.getIntrinsicHeight();
+		float aX = ( marker.anchorX == null ) ? anchorX : marker.anchorX;
+		float aY = ( marker.anchorY == null ) ? anchorY : marker.anchorY;
+		int left = (int) ( 0.5 + ( marker.x * scale ) ) + (int) ( w * aX );
+		int top = (int) ( 0.5 + ( marker.y * scale ) ) + (int) ( h * aY );
+		bounds.set( left, top, left + w, top + h );
+	}
+	
+	@Override
+	protected void dispatchDraw( Canvas canvas ) {
+		if ( drawnIndex.size() > 0 && scale > 0 ) {
+			drawDrawnMarkers( canvas );
+		}
+		super.dispatchDraw( canvas );
+	}
+	
+	private void drawDrawnMarkers( Canvas canvas ) {
+		canvas.getClipBounds( clip );
+		drawnArea.set( clip );
+		// a recorded display list's clip is the whole layer, so it's narrowed to the viewport (plus a margin to scroll into)
+		if ( !viewport.isEmpty() ) {
+			drawnArea.set( viewport );
+			drawnArea.inset( -viewportMargin, -viewportMargin );
+			if ( !drawnArea.intersect( clip ) ) {
+				drawnArea.setEmpty();
+				return;
+			}
+		}
+		// anchors are indexed as points, so look as far out as the largest marker could reach, in unscaled pixels
+		int left = (int) Math.floor( ( drawnArea.left - maximumDrawnWidth ) / scale );
+		int top = (int) Math.floor( ( drawnArea.top - maximumDrawnHeight ) / scale );
+		int right = (int) Math.ceil( ( drawnArea.right + maximumDrawnWidth ) / scale );
+		int bottom = (int) Math.ceil( ( drawnArea.bottom + maximumDrawnHeight ) / scale );
+		drawn.clear();
+		drawnIndex.query( left, top, right, bottom, drawn );
+		if ( drawn.size() == 0 ) {
+			return;
+		}
+		drawPass++;
+		for ( DrawnMarker marker : drawn ) {
+			marker.pass = drawPass;
+		}
+		drawn.clear();
+		for ( int i = 0, l = drawnOrdered.size(); i < l; i++ ) {
+			DrawnMarker marker = drawnOrdered.get( i );
+			if ( marker.pass != drawPass ) {
+				continue;
+			}
+			getDrawnBounds( marker, drawnBounds );
+			marker.drawable.setBounds( drawnBounds.left, drawnBounds.top, drawnBounds.right, drawnBounds.bottom );
+			marker.drawable.draw( canvas );
+		}
+	}
+	
+	private static <E extends View> ViewPool<E> createPool( ViewFactory<E> factory ) {
+		return new ViewPool<E>( factory );
+	}
+	
+	private void indexAdapter() {
+		adaptedIndex.clear();
+		if ( adapter != null ) {
+			int count = adapter.getCount();
+			for ( int position = 0; position < count; position++ ) {
+				AdaptedMarker marker = new AdaptedMarker( position, adapter.getItemViewType( position ), adapter.getX( position ), adapter.getY( position ) );
+				adaptedIndex.add( marker, marker.x, marker.y );
+			}
+		}
+		nearbyIsDirty = true;
+		updateNearby();
+	}
+	
+	private void bind( AdaptedMarker marker ) {
+		View view = pools.get( marker.type ).employView( getContext() );
+		adapter.bindView( marker.position, view );
+		LayoutParams lp = new LayoutParams( LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT, marker.x, marker.y );
+		lp.anchorX = adapter.getAnchorX( marker.position );
+		lp.anchorY = adapter.getAnchorY( marker.position );
+		addView( view, lp );
+		marker.view = view;
+		bound.add( marker );
+	}
+	
+	private void unbind( AdaptedMarker marker ) {
+		removeView( marker.view );
+		pools.get( marker.type ).retireView( marker.view );
+		marker.view = null;
+	}
+	
+	private void unbindAll() {
+		for ( AdaptedMarker marker : bound ) {
+			unbind( marker );
+		}
+		bound.clear();
+	}
+	
 	public void filterMarkers(){
+		if ( batchDepth > 0 ) {
+			filterIsPending = true;
+			return;
+		}
 		int zoom = zoomManager.getZoom();
-		viewSetManager.purgeViewSets();
+		// markers leave the view sets as they're removed, so only visibility needs updating
 		viewSetManager.updateDisplay( zoom );
 	}
 	
+	@Override
+	public void setViewport( int left, int top, int right, int bottom ) {
+		super.setViewport( left, top, right, bottom );
+		// drawn markers past the area last drawn need another draw
+		if ( drawnIndex.size() > 0 && !drawnArea.contains( viewport ) ) {
+			invalidate();
+		}
+		updateNearby();
+	}
+	
+	@Override
+	public void setScale( double d ) {
+		super.setScale( d );
+		// drawn markers move with the scale too
+		if ( drawnIndex.size() > 0 ) {
+			invalidate();
+		}
+		updateNearby();
+	}
+	
+	// brings markers that have come near the viewport into the view tree, and takes out those that have moved far from it
+	private void updateNearby() {
+		if ( viewport.isEmpty() || scale <= 0 ) {
+			return;
+		}
+		// the commit makes a pass
+		if ( batchDepth > 0 ) {
+			nearbyIsDirty = true;
+			return;
+		}
+		int width = viewport.width();
+		int height = viewport.height();
+		// a pass touches every marker, so only make one once things have moved a fair bit
+		int dx = (int) ( width * DETACH_THRESHOLD );
+		int dy = (int) ( height * DETACH_THRESHOLD );
+		boolean moved = Math.abs( viewport.left - detachedAt.left ) > dx || Math.abs( viewport.top - detachedAt.top ) > dy;
+		boolean resized = detachedAt.width() != width || detachedAt.height() != height;
+		boolean scaled = Math.abs( scale / detachedAtScale - 1 ) > DETACH_THRESHOLD;
+		if ( !moved && !resized && !scaled && !nearbyIsDirty ) {
+			return;
+		}
+		nearbyIsDirty = false;
+		detachedAt.set( viewport );
+		detachedAtScale = scale;
+		int horizontal = (int) ( width * DETACH_DISTANCE );
+		int vertical = (int) ( height * DETACH_DISTANCE );
+		int left = viewport.left - horizontal;
+		int top = viewport.top - vertical;
+		int right = viewport.right + horizontal;
+		int bottom = viewport.bottom + vertical;
+		// the indexes are unscaled
+		left = (int) Math.floor( left / scale );
+		top = (int) Math.floor( top / scale );
+		right = (int) Math.ceil( right / scale );
+		bottom = (int) Math.ceil( bottom / scale );
+		boolean changed = updateDetached( left, top, right, bottom );
+		changed |= updateBound( left, top, right, bottom );
+		if ( changed ) {
+			requestLayout();
+			invalidate();
+		}
+	}
+	
+	// detaches markers that have moved far from the viewport, and reattaches those that have come back near it
+	private boolean updateDetached( int left, int top, int right, int bottom ) {
+		nearby.clear();
+		index.query( left, top, right, bottom, nearby );
+		nearbyLookup.clear();
+		boolean changed = false;
+		for ( View child : nearby ) {
+			if ( detached.remove( child ) ) {
+				attachViewToParent( child, -1, child.getLayoutParams() );
+				changed = true;
+			} else if ( child.getParent() == null ) {
+				// removed some other way - it's not ours anymore
+				index.remove( child );
+				viewSetManager.removeView( child );
+				continue;
+			}
+			nearbyLookup.add( child );
+		}
+		nearby.clear();
+		// only the attached markers need checking - backwards, since detaching shifts the indices after it
+		for ( int i = getChildCount() - 1; i >= 0; i-- ) {
+			View child = getChildAt( i );
+			// views added without going through addMarker aren't indexed, so they stay
+			if ( nearbyLookup.contains( child ) || !index.contains( child ) ) {
+				continue;
+			}
+			detachViewFromParent( i );
+			detached.add( child );
+			changed = true;
+		}
+		nearbyLookup.clear();
+		return changed;
+	}
+	
+	// binds adapter markers that have come near the viewport, and recycles the Views of those that have moved away
+	private boolean updateBound( int left, int top, int right, int bottom ) {
+		if ( adapter == null ) {
+			return false;
+		}
+		pass++;
+		adaptedNearby.clear();
+		adaptedIndex.query( left, top, right, bottom, adaptedNearby );
+		boolean changed = false;
+		for ( AdaptedMarker marker : adaptedNearby ) {
+			marker.pass = pass;
+			if ( marker.view == null ) {
+				bind( marker );
+				changed = true;
+			}
+		}
+		adaptedNearby.clear();
+		Iterator<AdaptedMarker> iterator = bound.iterator();
+		while ( iterator.hasNext() ) {
+			AdaptedMarker marker = iterator.next();
+			if ( marker.pass != pass ) {
+				unbind( marker );
+				iterator.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+	
 	@Override
 	public void onZoomLevelChanged( int oldZoom, int newZoom ) {
 		filterMarkers();
@@ -66,5 +594,21 @@ public class MarkerManager extends TranslationLayout implements ZoomListener {
 	public void onZoomScaleChanged( double scale ) {
 		setScale( scale );
 	}
+	
+	private static class AdaptedMarker {
+		final int position;
+		final int type;
+		final int x;
+		final int y;
+		View view;
+		// the last pass that found it near the viewport
+		int pass;
+		AdaptedMarker( int p, int t, int px, int py ) {
+			position = p;
+			type = t;
+			x = px;
+			y = py;
+		}
+	}
 
 }
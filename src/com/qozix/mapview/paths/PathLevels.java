@@ -0,0 +1,24 @@
+package com.qozix.mapview.paths;
+
+import android.graphics.Path;
+
+// a path at full detail, and simplified for each zoom level (in unscaled pixels)
+class PathLevels {
+
+	final Path full;
+	final Path[] levels;
+
+	PathLevels( Path f, Path[] l ) {
+		full = f;
+		levels = l;
+	}
+
+	// the path to draw at a zoom level - full detail if the level's unknown
+	Path getPath( int zoom ) {
+		if ( zoom < 0 || zoom >= levels.length ) {
+			return full;
+		}
+		return levels[zoom];
+	}
+
+}
@@ -1,26 +1,44 @@
 package com.qozix.mapview.paths;
 
+import java.util.HashMap;
 import java.util.List;
 
 import android.content.Context;
+import android.graphics.Path;
 import android.graphics.Point;
 import android.view.View;
 
+import com.qozix.geom.Geolocator;
 import com.qozix.layouts.StaticLayout;
 import com.qozix.mapview.viewmanagers.ViewSetManager;
 import com.qozix.mapview.zoom.ZoomListener;
 import com.qozix.mapview.zoom.ZoomManager;
+import com.qozix.mapview.zoom.ZoomSetupListener;
+import com.qozix.widgets.AsyncTask;
 
-public class PathManager extends StaticLayout implements ZoomListener {
+public class PathManager extends StaticLayout implements ZoomListener, ZoomSetupListener {
+
+	// simplified paths stray from the full ones by no more than this many pixels, on screen
+	private static final double SIMPLIFICATION_TOLERANCE = 0.5;
 
 	private double scale = 1;
 	private ZoomManager zoomManager;
 	private ViewSetManager viewSetManager = new ViewSetManager();
 	
+	// while batching, paths go in and out of the tree without requesting layouts, and filtering waits for the commit
+	private int batchDepth;
+	private boolean filterIsPending;
+	
+	// paths whose geometry is still being prepared off the UI thread
+	private HashMap<PathView, PathPreparationTask> preparationTasks = new HashMap<PathView, PathPreparationTask>();
+	// bumped when zoom levels are added - simplified levels prepared for the old set are indexed and toleranced wrong
+	private int levelGeneration;
+	
 	public PathManager( Context context, ZoomManager zm ) {
 		super( context );
 		zoomManager = zm;
 		zoomManager.addZoomListener( this );
+		zoomManager.addzoomSetupListener( this );
 	}
 	
 	public void setScale( double s ){
@@ -36,27 +54,161 @@ public class PathManager extends StaticLayout implements ZoomListener {
 	
 	public View drawPath( List<Point> points ) {
 		PathView pathView = new PathView( getContext() );
+		pathView.setZoom( zoomManager.getZoom(), getLevelScale( zoomManager.getZoom() ) );
 		pathView.setScale( scale );
+		// drawn at full detail right away - the simplified levels are prepared off the UI thread and swapped in later
 		pathView.drawPath( points );
-		addView( pathView );
+		addPathView( pathView );
+		int[] pixels = new int[points.size() * 2];
+		int i = 0;
+		for ( Point point : points ) {
+			pixels[i++] = point.x;
+			pixels[i++] = point.y;
+		}
+		startPreparationTask( pathView, new PathPreparationTask( this, pathView, pixels, getTolerances(), levelGeneration ) );
+		return pathView;
+	}
+	
+	/**
+	 * Draws a path whose geometry is prepared off the UI thread - the coordinates are translated to pixels, and
+	 * points that land on the same pixel are dropped, then the finished path is swapped into the view.  The view
+	 * is added right away, and is empty until then.
+	 * @param positions (double[]) pairs of values - x, y or, with a geolocator, latitude, longitude - one pair per point
+	 * @param geolocator (Geolocator) translates the positions to pixels, or null if they're pixels already
+	 * @return (View) the PathView the path will be drawn in
+	 */
+	public View drawPath( double[] positions, Geolocator geolocator ) {
+		PathView pathView = new PathView( getContext() );
+		pathView.setZoom( zoomManager.getZoom(), getLevelScale( zoomManager.getZoom() ) );
+		pathView.setScale( scale );
+		addPathView( pathView );
+		startPreparationTask( pathView, new PathPreparationTask( this, pathView, positions, geolocator, getTolerances(), levelGeneration ) );
 		return pathView;
 	}
 	
+	private void startPreparationTask( PathView pathView, PathPreparationTask task ) {
+		preparationTasks.put( pathView, task );
+		task.execute();
+	}
+	
+	private void addPathView( PathView pathView ) {
+		if ( batchDepth > 0 ) {
+			addViewInLayout( pathView, -1, generateDefaultLayoutParams(), true );
+		} else {
+			addView( pathView );
+		}
+	}
+	
 	public View drawPathAtZoom( List<Point> points, int zoom ){
+		return drawPathAtZoomRange( points, zoom, zoom );
+	}
+	
+	public View drawPathAtZoomRange( List<Point> points, int min, int max ){
 		View pathView = drawPath( points );
-		viewSetManager.addViewAtLevel( pathView, zoom );
+		viewSetManager.addViewAtLevels( pathView, min, max );
 		filterPathViews();
 		return pathView;
 	}
+	
+	public boolean removePath( View pathView ) {
+		viewSetManager.removeView( pathView );
+		cancelPreparationTask( pathView );
+		if ( indexOfChild( pathView ) > -1 ) {
+			if ( batchDepth > 0 ) {
+				removeViewInLayout( pathView );
+			} else {
+				removeView( pathView );
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Starts a batch of changes.  Until the matching commitBatch, drawing and removing paths doesn't request a
+	 * layout, and zoom visibility isn't updated.  Batches can be nested; only the outermost commit applies them.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+	
+	public void commitBatch() {
+		if ( batchDepth == 0 ) {
+			return;
+		}
+		batchDepth--;
+		if ( batchDepth > 0 ) {
+			return;
+		}
+		if ( filterIsPending ) {
+			filterIsPending = false;
+			filterPathViews();
+		}
+		requestLayout();
+		invalidate();
+	}
+	
+	public boolean getIsBatching() {
+		return batchDepth > 0;
+	}
+
+	private void cancelPreparationTask( View pathView ) {
+		PathPreparationTask task = preparationTasks.remove( pathView );
+		if ( task != null && task.getStatus() != AsyncTask.Status.FINISHED ) {
+			task.cancel( true );
+		}
+	}
+	
+	// invoked on the UI thread, once a path's geometry is ready
+	void onPreparationTaskPostExecute( PathPreparationTask task, PathView pathView, PathLevels levels ) {
+		// removed or replaced while it was being prepared
+		if ( preparationTasks.get( pathView ) != task ) {
+			return;
+		}
+		preparationTasks.remove( pathView );
+		// levels were added since it started, so only the full path is good
+		if ( task.getLevelGeneration() != levelGeneration ) {
+			pathView.setLevels( new PathLevels( levels.full, new Path[0] ) );
+			return;
+		}
+		pathView.setLevels( levels );
+	}
+	
+	// paths are prepared at their level's scale - 1 if there aren't any levels yet
+	private double getLevelScale( int zoom ) {
+		if ( zoom < 0 || zoom >= zoomManager.getNumZoomLevels() ) {
+			return 1;
+		}
+		return zoomManager.getZoomLevelScale( zoom );
+	}
+	
+	// each level's tolerance, in unscaled pixels - a level is shown down to its own scale, where pixels are largest
+	private double[] getTolerances() {
+		int count = zoomManager.getNumZoomLevels();
+		double[] tolerances = new double[count];
+		for ( int z = 0; z < count; z++ ) {
+			tolerances[z] = SIMPLIFICATION_TOLERANCE / zoomManager.getZoomLevelScale( z );
+		}
+		return tolerances;
+	}
 
 	public void filterPathViews(){
+		if ( batchDepth > 0 ) {
+			filterIsPending = true;
+			return;
+		}
 		int zoom = zoomManager.getZoom();
-		viewSetManager.purgeViewSets();
 		viewSetManager.updateDisplay( zoom );
 	}
 	
 	@Override
 	public void onZoomLevelChanged( int oldZoom, int newZoom ) {
+		for ( int i = 0; i < getChildCount(); i++ ) {
+			View child = getChildAt( i );
+			if ( child instanceof PathView ) {
+				( (PathView) child ).setZoom( newZoom, getLevelScale( newZoom ) );
+			}
+		}
 		filterPathViews();
 	}
 
@@ -64,5 +216,20 @@ public class PathManager extends StaticLayout implements ZoomListener {
 	public void onZoomScaleChanged( double scale ) {
 		setScale( scale );
 	}
+	
+	@Override
+	public void onZoomLevelAdded() {
+		// level indices and scales have shifted - until a path's redrawn, it's drawn at full detail
+		levelGeneration++;
+		int zoom = zoomManager.getZoom();
+		for ( int i = 0; i < getChildCount(); i++ ) {
+			View child = getChildAt( i );
+			if ( child instanceof PathView ) {
+				PathView pathView = (PathView) child;
+				pathView.dropLevels();
+				pathView.setZoom( zoom, getLevelScale( zoom ) );
+			}
+		}
+	}
 
 }
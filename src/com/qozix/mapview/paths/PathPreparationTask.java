@@ -0,0 +1,81 @@
+package com.qozix.mapview.paths;
+
+import java.lang.ref.WeakReference;
+
+import com.qozix.geom.Geolocator;
+import com.qozix.widgets.AsyncTask;
+
+class PathPreparationTask extends AsyncTask<Void, Void, PathLevels> implements PathSimplifier.Cancellable {
+
+	private final WeakReference<PathManager> reference;
+	private final WeakReference<PathView> viewReference;
+	private final double[] positions;
+	private final Geolocator geolocator;
+	private final double[] tolerances;
+	// pixels given up front, rather than translated from positions
+	private final int[] pixels;
+	// the zoom levels the tolerances were computed for - see PathManager.getLevelGeneration
+	private final int levelGeneration;
+
+	// package level access
+	PathPreparationTask( PathManager pm, PathView view, double[] p, Geolocator g, double[] t, int generation ) {
+		super();
+		reference = new WeakReference<PathManager>( pm );
+		viewReference = new WeakReference<PathView>( view );
+		positions = p;
+		// a copy, since the original is resized on the UI thread as the zoom level changes
+		geolocator = ( g == null ) ? null : new Geolocator( g );
+		tolerances = t;
+		pixels = null;
+		levelGeneration = generation;
+	}
+
+	// for points that are already pixels - only the simplification is left to do
+	PathPreparationTask( PathManager pm, PathView view, int[] px, double[] t, int generation ) {
+		super();
+		reference = new WeakReference<PathManager>( pm );
+		viewReference = new WeakReference<PathView>( view );
+		positions = null;
+		geolocator = null;
+		tolerances = t;
+		pixels = px;
+		levelGeneration = generation;
+	}
+
+	int getLevelGeneration() {
+		return levelGeneration;
+	}
+
+	@Override
+	protected PathLevels doInBackground( Void... params ) {
+		if ( pixels != null ) {
+			return new PathSimplifier().build( pixels, tolerances, this );
+		}
+		int[] pixels = new int[positions.length - ( positions.length % 2 )];
+		if ( geolocator != null ) {
+			geolocator.translate( positions, pixels );
+		} else {
+			for ( int i = 0; i < pixels.length; i++ ) {
+				pixels[i] = (int) positions[i];
+			}
+		}
+		// quit if task has been cancelled or replaced
+		if ( isCancelled() ) {
+			return null;
+		}
+		// the heavy lift - simplifying for every zoom level
+		return new PathSimplifier().build( pixels, tolerances, this );
+	}
+
+	@Override
+	protected void onPostExecute( PathLevels levels ) {
+		// have we been stopped or dereffed?
+		PathManager pathManager = reference.get();
+		PathView view = viewReference.get();
+		// if not, hand the path back on the UI thread to be swapped in
+		if ( pathManager != null && view != null && levels != null ) {
+			pathManager.onPreparationTaskPostExecute( this, view, levels );
+		}
+	}
+
+}
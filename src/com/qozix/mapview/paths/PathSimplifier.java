@@ -0,0 +1,216 @@
+package com.qozix.mapview.paths;
+
+import android.graphics.Path;
+
+/**
+ * Builds a path at full detail, plus a simplified copy for each zoom level.  Simplification is Douglas-Peucker,
+ * done iteratively (no recursion, so long paths can't overflow the stack), with each level's tolerance given in
+ * unscaled pixels.  Points are int x, y pairs in a single array.  Meant for use off the UI thread, and checks for
+ * cancellation as it goes.  An instance isn't thread safe - its scratch arrays are reused between calls.
+ */
+class PathSimplifier {
+
+	// how many points are visited between checks for cancellation
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	interface Cancellable {
+		boolean isCancelled();
+	}
+
+	private boolean[] keep = new boolean[0];
+	// pending (first, last) index pairs
+	private int[] stack = new int[0];
+	private Cancellable cancellable;
+	private int visited;
+
+	/**
+	 * @param pixels (int[]) x, y pairs - consecutive duplicates are removed in place
+	 * @param tolerances (double[]) the largest distance (in unscaled pixels) a simplified path may stray from the full one, at each zoom level
+	 * @param c (Cancellable) checked between levels and every few thousand points, or null
+	 * @return (PathLevels) the full path and one per zoom level - levels that simplify to the same points share a Path - or null if cancelled
+	 */
+	PathLevels build( int[] pixels, double[] tolerances, Cancellable c ) {
+		cancellable = c;
+		visited = 0;
+		int count = removeDuplicates( pixels );
+		Path full = toPath( pixels, count, null );
+		Path[] levels = new Path[tolerances.length];
+		int[] lastKept = null;
+		Path lastPath = full;
+		int lastCount = count;
+		for ( int z = tolerances.length - 1; z >= 0; z-- ) {
+			if ( isCancelled( 0 ) ) {
+				return null;
+			}
+			int kept = simplify( pixels, count, tolerances[z] );
+			if ( kept == -1 ) {
+				return null;
+			}
+			// same as the more detailed level - nothing to gain from another copy
+			if ( kept == lastCount && ( lastKept == null || sameKept( lastKept ) ) ) {
+				levels[z] = lastPath;
+				continue;
+			}
+			lastPath = toPath( pixels, count, keep );
+			lastKept = copyKept( count );
+			lastCount = kept;
+			levels[z] = lastPath;
+		}
+		return new PathLevels( full, levels );
+	}
+
+	// drops points that repeat the one before them, and returns the number of points left
+	static int removeDuplicates( int[] pixels ) {
+		int l = pixels.length - ( pixels.length % 2 );
+		if ( l == 0 ) {
+			return 0;
+		}
+		int count = 1;
+		for ( int i = 2; i < l; i += 2 ) {
+			int x = pixels[i];
+			int y = pixels[i + 1];
+			int last = ( count - 1 ) * 2;
+			if ( x == pixels[last] && y == pixels[last + 1] ) {
+				continue;
+			}
+			pixels[count * 2] = x;
+			pixels[count * 2 + 1] = y;
+			count++;
+		}
+		return count;
+	}
+
+	// true if cancelled - only actually checked every CANCEL_CHECK_INTERVAL points visited
+	private boolean isCancelled( int points ) {
+		if ( cancellable == null ) {
+			return false;
+		}
+		visited += points;
+		if ( points > 0 && visited < CANCEL_CHECK_INTERVAL ) {
+			return false;
+		}
+		visited = 0;
+		return cancellable.isCancelled();
+	}
+
+	// marks the points to keep (in keep), and returns how many there are, or -1 if cancelled
+	private int simplify( int[] pixels, int count, double tolerance ) {
+		if ( keep.length < count ) {
+			keep = new boolean[count];
+			// pending ranges don't overlap, so there are never more than count of them
+			stack = new int[count * 2];
+		}
+		if ( count < 3 ) {
+			for ( int i = 0; i < count; i++ ) {
+				keep[i] = true;
+			}
+			return count;
+		}
+		for ( int i = 1; i < count - 1; i++ ) {
+			keep[i] = false;
+		}
+		keep[0] = true;
+		keep[count - 1] = true;
+		int kept = 2;
+		double limit = tolerance * tolerance;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count - 1;
+		while ( top > 0 ) {
+			int last = stack[--top];
+			int first = stack[--top];
+			if ( isCancelled( last - first ) ) {
+				return -1;
+			}
+			double farthest = -1;
+			int index = -1;
+			for ( int i = first + 1; i < last; i++ ) {
+				double d = getSquaredSegmentDistance( pixels, i, first, last );
+				if ( d > farthest ) {
+					farthest = d;
+					index = i;
+				}
+			}
+			if ( index > -1 && farthest > limit ) {
+				keep[index] = true;
+				kept++;
+				stack[top++] = first;
+				stack[top++] = index;
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+		return kept;
+	}
+
+	private boolean sameKept( int[] lastKept ) {
+		for ( int i : lastKept ) {
+			if ( !keep[i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int[] copyKept( int count ) {
+		int kept = 0;
+		for ( int i = 0; i < count; i++ ) {
+			if ( keep[i] ) {
+				kept++;
+			}
+		}
+		int[] indices = new int[kept];
+		kept = 0;
+		for ( int i = 0; i < count; i++ ) {
+			if ( keep[i] ) {
+				indices[kept++] = i;
+			}
+		}
+		return indices;
+	}
+
+	// squared distance from point p to the segment between points a and b
+	private static double getSquaredSegmentDistance( int[] pixels, int p, int a, int b ) {
+		double x = pixels[a * 2];
+		double y = pixels[a * 2 + 1];
+		double dx = pixels[b * 2] - x;
+		double dy = pixels[b * 2 + 1] - y;
+		double px = pixels[p * 2];
+		double py = pixels[p * 2 + 1];
+		if ( dx != 0 || dy != 0 ) {
+			double t = ( ( px - x ) * dx + ( py - y ) * dy ) / ( dx * dx + dy * dy );
+			if ( t > 1 ) {
+				x += dx;
+				y += dy;
+			} else if ( t > 0 ) {
+				x += dx * t;
+				y += dy * t;
+			}
+		}
+		dx = px - x;
+		dy = py - y;
+		return dx * dx + dy * dy;
+	}
+
+	// a path through the points marked in kept, or all of them if it's null
+	private static Path toPath( int[] pixels, int count, boolean[] kept ) {
+		Path path = new Path();
+		path.incReserve( count );
+		boolean started = false;
+		for ( int i = 0; i < count; i++ ) {
+			if ( kept != null && !kept[i] ) {
+				continue;
+			}
+			float x = pixels[i * 2];
+			float y = pixels[i * 2 + 1];
+			if ( started ) {
+				path.lineTo( x, y );
+			} else {
+				path.moveTo( x, y );
+				started = true;
+			}
+		}
+		return path;
+	}
+
+}
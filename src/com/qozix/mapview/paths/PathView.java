@@ -11,16 +11,47 @@ import android.graphics.Path;
 import android.graphics.Point;
 import android.view.View;
 
+/*
+ * Paths are kept in unscaled pixels.  The path for the current zoom level is transformed to that level's scale once,
+ * when the level changes, and the canvas only applies the scale relative to the level - so a scale change costs
+ * nothing per vertex, and the canvas scale stays near 1 (hardware accelerated canvases draw paths through a
+ * texture at their untransformed size, which would be blurry or too large for the full scale range).  Stroke width,
+ * corner radius and shadow are divided by the relative scale as they're drawn, so they stay the same size on screen.
+ */
 
 public class PathView extends View {
 
 	private static final int DEFAULT_COLOR = 0xBB489FFF;
 
 	private Paint paint = new Paint();
+	// a copy of paint, with its on-screen sizes divided by the scale
+	private Paint drawingPaint = new Paint();
 	private Path originalPath = new Path();
-	private Path drawingPath = new Path();
+	// simplified versions for each zoom level, if they've been prepared
+	private PathLevels levels;
+	private int zoom = -1;
+	private double levelScale = 1;
+	
+	// the path being drawn, transformed to the level's scale - redone only when the level or the path changes
+	private Path levelPath = new Path();
+	private Path levelPathSource;
+	private double levelPathScale;
+	private Matrix matrix = new Matrix();
 
 	private double scale = 1;
+	
+	// corner effects are recreated in steps of this much relative scale, not on every frame of a pinch
+	private static final double CORNER_EFFECT_STEP = 0.125;
+	
+	private float cornerRadius = 5;
+	private CornerPathEffect cornerEffect;
+	private CornerPathEffect scaledCornerEffect;
+	private double scaledCornerEffectScale;
+	
+	private float shadowRadius = 4;
+	private float shadowDx = 2;
+	private float shadowDy = 2;
+	private int shadowColor = 0x66000000;
 
 	public PathView( Context context ) {
 		super( context );
@@ -29,8 +60,8 @@ public class PathView extends View {
 		paint.setAntiAlias( true );
 		paint.setColor( DEFAULT_COLOR );
 		paint.setStrokeWidth( 7 );
-		paint.setShadowLayer( 4, 2, 2, 0x66000000 );
-		paint.setPathEffect( new CornerPathEffect( 5 ) );
+		paint.setShadowLayer( shadowRadius, shadowDx, shadowDy, shadowColor );
+		setCornerRadii( cornerRadius );
 	}
 
 	public void setColor( int c ) {
@@ -39,16 +70,25 @@ public class PathView extends View {
 	}
 
 	public void setCornerRadii( float r ) {
-		paint.setPathEffect( new CornerPathEffect( r ) );
+		cornerRadius = r;
+		cornerEffect = new CornerPathEffect( r );
+		scaledCornerEffect = null;
+		paint.setPathEffect( cornerEffect );
 		invalidate();
 	}
 	
 	public void setShadowLayer(float radius, float dx, float dy, int color){
+		shadowRadius = radius;
+		shadowDx = dx;
+		shadowDy = dy;
+		shadowColor = color;
 		paint.setShadowLayer( radius, dx, dy, color );
+		invalidate();
 	}
 	
 	public void setStrokeWidth( float w ){
 		paint.setStrokeWidth( w );
+		invalidate();
 	}
 
 	public double getScale() {
@@ -59,12 +99,21 @@ public class PathView extends View {
 		return paint;
 	}
 
+	/**
+	 * Chooses which simplified version of the path is drawn, if there are any, and the scale it's prepared at
+	 * @param z (int) the current zoom level
+	 * @param s (double) that level's scale
+	 */
+	public void setZoom( int z, double s ) {
+		if ( z == zoom && s == levelScale ) {
+			return;
+		}
+		zoom = z;
+		levelScale = ( s > 0 ) ? s : 1;
+		invalidate();
+	}
+
 	public void setScale( double s ) {
-		float factor = (float) s;
-		Matrix matrix = new Matrix();
-		drawingPath.set( originalPath );
-		matrix.setScale( factor, factor );
-		originalPath.transform( matrix, drawingPath );
 		scale = s;
 		invalidate();
 	}
@@ -78,14 +127,69 @@ public class PathView extends View {
 			Point p = points.get( i );
 			originalPath.lineTo( (float) p.x, (float) p.y );
 		}
-		drawingPath.set( originalPath );
+		levels = null;
+		// same Path instance, new points
+		levelPathSource = null;
 		invalidate();
 	}
 
+	// swaps in paths that have already been built and simplified, e.g. off the UI thread
+	void setLevels( PathLevels l ) {
+		levels = l;
+		originalPath = l.full;
+		invalidate();
+	}
+	
+	// the simplified levels no longer match the zoom levels, so only the full path is drawn
+	void dropLevels() {
+		if ( levels != null ) {
+			levels = null;
+			invalidate();
+		}
+	}
+
 	@Override
 	public void onDraw( Canvas canvas ) {
-		canvas.drawPath( drawingPath, paint );
+		if ( scale > 0 ) {
+			Path source = ( levels == null ) ? originalPath : levels.getPath( zoom );
+			updateLevelPath( source );
+			double relativeScale = scale / levelScale;
+			float factor = (float) relativeScale;
+			updateDrawingPaint( relativeScale );
+			canvas.save();
+			canvas.scale( factor, factor );
+			canvas.drawPath( levelPath, drawingPaint );
+			canvas.restore();
+		}
 		super.onDraw( canvas );
 	}
+	
+	private void updateLevelPath( Path source ) {
+		if ( source == levelPathSource && levelScale == levelPathScale ) {
+			return;
+		}
+		float factor = (float) levelScale;
+		matrix.setScale( factor, factor );
+		source.transform( matrix, levelPath );
+		levelPathSource = source;
+		levelPathScale = levelScale;
+	}
+	
+	// the canvas scales everything, so sizes that should stay constant on screen are scaled the other way
+	private void updateDrawingPaint( double relativeScale ) {
+		float inverse = (float) ( 1 / relativeScale );
+		drawingPaint.set( paint );
+		drawingPaint.setStrokeWidth( paint.getStrokeWidth() * inverse );
+		drawingPaint.setShadowLayer( shadowRadius * inverse, shadowDx * inverse, shadowDy * inverse, shadowColor );
+		// an effect set directly on the paint is left as it is
+		if ( cornerEffect != null && paint.getPathEffect() == cornerEffect ) {
+			double step = Math.max( Math.round( relativeScale / CORNER_EFFECT_STEP ), 1 ) * CORNER_EFFECT_STEP;
+			if ( scaledCornerEffect == null || scaledCornerEffectScale != step ) {
+				scaledCornerEffect = new CornerPathEffect( (float) ( cornerRadius / step ) );
+				scaledCornerEffectScale = step;
+			}
+			drawingPaint.setPathEffect( scaledCornerEffect );
+		}
+	}
 
 }
\ No newline at end of file
@@ -16,10 +16,10 @@ public class MapTile {
 
 	private static final String TAG = MapTile.class.getSimpleName();
 
-	private static final BitmapFactory.Options OPTIONS = new BitmapFactory.Options();
-	static {
-		OPTIONS.inPreferredConfig = Bitmap.Config.RGB_565;
-	}
+	private static final int KEY_BITS = 24;
+	private static final long KEY_MASK = ( 1L << KEY_BITS ) - 1;
+
+	private long key;
 
 	private int zoom;
 
@@ -32,6 +32,11 @@ public class MapTile {
 	private int right;
 	private int bottom;
 
+	private int sampleSize = 1;
+	private int decodedSampleSize = 1;
+
+	private Bitmap.Config bitmapConfig = Bitmap.Config.RGB_565;
+
 	private String pattern;
 
 	private ImageView imageView;
@@ -39,6 +44,17 @@ public class MapTile {
 
 	private boolean hasBitmap;
 
+	// bytes claimed from the memory budget for the current bitmap, while it's not held by a cache
+	private MapTileMemoryBudget budget;
+	private long reservedBytes;
+	
+	// the cache holding the current bitmap, which owns its reservation from then on
+	private MapTileCache heldCache;
+	private String heldKey;
+
+	// set while the tile sits in a MapTilePool, so it can't be retired twice
+	private boolean isPooled;
+
 	public MapTile() {
 
 	}
@@ -58,6 +74,22 @@ public class MapTile {
 		right = left + w;
 		bottom = top + h;
 		pattern = p;
+		key = getKey( z, r, c );
+	}
+
+	/**
+	 * Packs a tile's position into a single long - 16 bits of zoom, 24 bits each of row and column.
+	 * @param z (int) zoom level index
+	 * @param r (int) row
+	 * @param c (int) column
+	 * @return (long) the key that identifies a tile at that position
+	 */
+	public static long getKey( int z, int r, int c ) {
+		return ( (long) z << ( KEY_BITS * 2 ) ) | ( ( r & KEY_MASK ) << KEY_BITS ) | ( c & KEY_MASK );
+	}
+
+	public long getKey() {
+		return key;
 	}
 
 	public int getRow() {
@@ -96,38 +128,177 @@ public class MapTile {
 		return zoom;
 	}
 
+	public boolean getHasBitmap() {
+		return hasBitmap;
+	}
+
 	public ImageView getImageView() {
 		return imageView;
 	}
 
+	/**
+	 * The bitmap will be decoded at 1/sampleSize of the tile's width and height (if the decoder supports it),
+	 * and stretched to the tile's full dimensions when rendered.
+	 * @param s (int) the inSampleSize to decode with - a power of 2
+	 */
+	public void setSampleSize( int s ) {
+		sampleSize = s;
+	}
+
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	public int getDecodedSampleSize() {
+		return decodedSampleSize;
+	}
+
+	/**
+	 * The preferred pixel format for this tile's bitmap (e.g., ARGB_8888 for translucent tiles)
+	 * @param config (Bitmap.Config) the config to decode and cache with
+	 */
+	public void setBitmapConfig( Bitmap.Config config ) {
+		bitmapConfig = config;
+	}
+
+	public Bitmap.Config getBitmapConfig() {
+		return bitmapConfig;
+	}
+
 	public String getFileName() {
 		return pattern.replace( "%col%", Integer.toString( column ) ).replace( "%row%", Integer.toString( row ) );
 	}
 
 	public void decode( Context context, MapTileCache cache, MapTileDecoder decoder ) {
-		if ( hasBitmap ) {
+		decode( context, cache, decoder, null );
+	}
+
+	/**
+	 * Decodes the tile's bitmap (or fetches it from the cache), within the memory budget provided.  If the bitmap
+	 * won't fit under the budget's ceiling, the tile is left without a bitmap.  A bitmap from (or added to) the cache
+	 * is held out of its lru while the tile shows it, so its bytes are counted once, by the tile's reservation.
+	 * @param context (Context) context passed to the decoder
+	 * @param cache (MapTileCache) cache to check first, and to add to after decoding, or null
+	 * @param decoder (MapTileDecoder) decoder used if the bitmap isn't cached
+	 * @param memoryBudget (MapTileMemoryBudget) the budget to reserve the bitmap's bytes from, or null
+	 */
+	public void decode( Context context, MapTileCache cache, MapTileDecoder decoder, MapTileMemoryBudget memoryBudget ) {
+		// decoders that don't accept options always produce full-size bitmaps
+		boolean canSample = ( decoder instanceof MapTileOptionsDecoder );
+		int targetSampleSize = canSample ? sampleSize : 1;
+		if ( hasBitmap && decodedSampleSize == targetSampleSize ) {
 			return;
 		}
+		// whatever was held before is being replaced
+		releaseBytes();
 		String fileName = getFileName();
+		String cacheKey = getCacheKey( fileName, targetSampleSize );
 		if ( cache != null ) {
-			Bitmap cached = cache.getBitmap( fileName );
+			// shown by another tile - already counted
+			Bitmap cached = cache.acquireHeldBitmap( cacheKey );
+			if ( cached != null ) {
+				heldCache = cache;
+				heldKey = cacheKey;
+			} else {
+				cached = cache.getBitmap( cacheKey, bitmapConfig );
+				if ( cached != null ) {
+					if ( !reserveBytes( memoryBudget, cache, MapTileCache.getByteCount( cached ) ) ) {
+						return;
+					}
+					cached = holdBitmap( cache, cacheKey, cached );
+				}
+			}
 			if ( cached != null ) {
 				bitmap = cached;
+				hasBitmap = true;
+				decodedSampleSize = targetSampleSize;
 				return;
-			}	
-		}			
-		bitmap = decoder.decode( fileName, context );
+			}
+		}
+		// claim the expected size up front, so we don't decode something that won't fit
+		int estimate = MapTileMemoryBudget.estimateByteCount( width / targetSampleSize, height / targetSampleSize, bitmapConfig );
+		if ( !reserveBytes( memoryBudget, cache, estimate ) ) {
+			return;
+		}
+		if ( canSample ) {
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inPreferredConfig = bitmapConfig;
+			options.inSampleSize = targetSampleSize;
+			bitmap = ( (MapTileOptionsDecoder) decoder ).decode( fileName, context, options );
+		} else {
+			bitmap = decoder.decode( fileName, context );
+		}
 		hasBitmap = ( bitmap != null );
+		decodedSampleSize = targetSampleSize;
+		// correct the estimate
+		if ( budget != null ) {
+			long actual = hasBitmap ? MapTileCache.getByteCount( bitmap ) : 0;
+			budget.adjust( actual - reservedBytes );
+			reservedBytes = actual;
+		}
+		if ( cache != null && hasBitmap ) {
+			bitmap = holdBitmap( cache, cacheKey, bitmap );
+			cache.addBitmapToDiskCache( cacheKey, bitmap );
+		}
+	}
+	
+	// the cache takes over the reservation, and returns the bitmap to the lru once no tile holds it
+	private Bitmap holdBitmap( MapTileCache cache, String cacheKey, Bitmap b ) {
+		Bitmap shared = cache.holdBitmap( cacheKey, b, budget, reservedBytes );
+		budget = null;
+		reservedBytes = 0;
+		heldCache = cache;
+		heldKey = cacheKey;
+		return shared;
+	}
+
+	private boolean reserveBytes( MapTileMemoryBudget memoryBudget, MapTileCache cache, long bytes ) {
+		if ( memoryBudget == null ) {
+			return true;
+		}
+		if ( !memoryBudget.reserve( bytes ) ) {
+			return false;
+		}
+		budget = memoryBudget;
+		reservedBytes = bytes;
+		// the cache gets what the tiles leave
 		if ( cache != null ) {
-			cache.addBitmap( fileName, bitmap );
+			cache.trimToBudget();
 		}
+		return true;
+	}
+
+	private void releaseBytes() {
+		if ( heldCache != null ) {
+			heldCache.releaseHeldBitmap( heldKey );
+		}
+		heldCache = null;
+		heldKey = null;
+		if ( budget != null ) {
+			budget.release( reservedBytes );
+		}
+		budget = null;
+		reservedBytes = 0;
+	}
+
+	// sampled or non-default format bitmaps are cached separately from the default full-size bitmaps
+	private String getCacheKey( String fileName, int targetSampleSize ) {
+		String cacheKey = fileName;
+		if ( targetSampleSize != 1 ) {
+			cacheKey += "@" + targetSampleSize;
+		}
+		if ( bitmapConfig != Bitmap.Config.RGB_565 ) {
+			cacheKey += "#" + bitmapConfig;
+		}
+		return cacheKey;
 	}
 
 	public boolean render( Context context ) {
 		if ( imageView == null ) {
 			imageView = new ImageView( context );
 			imageView.setAdjustViewBounds( false );
-			imageView.setScaleType( ImageView.ScaleType.MATRIX );
+			// stretch to the tile's layout size, so sampled bitmaps fill the same area as full-size ones
+			imageView.setScaleType( ImageView.ScaleType.FIT_XY );
 		}
 		imageView.setImageBitmap( bitmap );
 		return true;
@@ -145,19 +316,32 @@ public class MapTile {
 		}
 		hasBitmap = false;
 		bitmap = null;
+		decodedSampleSize = 1;
+		releaseBytes();
+	}
+
+	boolean getIsPooled() {
+		return isPooled;
+	}
+
+	void setIsPooled( boolean pooled ) {
+		isPooled = pooled;
 	}
 
 	@Override
 	public boolean equals( Object o ) {
 		if ( o instanceof MapTile ) {
 			MapTile m = (MapTile) o;
-			return ( m.getRow() == getRow() )
-				&& ( m.getColumn() == getColumn() )
-				&& ( m.getZoom() == getZoom() );
+			return m.getKey() == getKey();
 		}
 		return false;
 	}
 
+	@Override
+	public int hashCode() {
+		return (int) ( key ^ ( key >>> 32 ) );
+	}
+
 	@Override
 	public String toString() {
 		return "(left=" + left + ", top=" + top + ", right=" + right + ", bottom=" + bottom + ")";
@@ -7,13 +7,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.util.HashMap;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Bitmap.CompressFormat;
+import android.os.Build;
 import android.support.v4.util.LruCache;
 
 import com.jakewharton.DiskLruCache;
@@ -25,15 +28,23 @@ public class MapTileCache {
 	
 	private static final int COMPRESSION_QUALITY = 40;
 	
-	private static final BitmapFactory.Options BITMAPFACTORY_OPTIONS = new BitmapFactory.Options();
-	static {
-		BITMAPFACTORY_OPTIONS.inPreferredConfig = Bitmap.Config.RGB_565;
-	}
-
 	private MessageDigest digest;
 	
 	private LruCache<String, Bitmap> memoryCache;
 	private DiskLruCache diskCache;
+	
+	private MapTileMemoryBudget memoryBudget;
+	
+	// bitmaps shown by live tiles are taken out of the lru while they're held, so each is only counted once - by the
+	// reservation the holding tiles share - and trimming the lru only ever evicts bitmaps nothing's showing
+	private HashMap<String, HeldBitmap> held = new HashMap<String, HeldBitmap>();
+	
+	private static class HeldBitmap {
+		Bitmap bitmap;
+		int holders;
+		MapTileMemoryBudget budget;
+		long bytes;
+	}
 
 	// TODO: register local broadcast receiver to destroy the cache during onDestroy of containing Activity
 	public MapTileCache( final Context context ) {
@@ -43,15 +54,14 @@ public class MapTileCache {
 			
 		}
 		// in memory cache
-		final int memory = (int) ( Runtime.getRuntime().maxMemory() / 1024 );
-		final int size = memory / 8;
+		final long memory = Runtime.getRuntime().maxMemory();
+		final int size = (int) Math.min( memory / 8, Integer.MAX_VALUE );
 		memoryCache = new LruCache<String, Bitmap>( size ) {
 			@Override
 			protected int sizeOf( String key, Bitmap bitmap ) {
-				// The cache size will be measured in kilobytes rather than number of items.
-				// emulate bitmap.getByteCount for APIs less than 12
-				int byteCount = bitmap.getRowBytes() * bitmap.getHeight();
-				return byteCount / 1024;
+				// The cache size will be measured in bytes rather than number of items.
+				// kilobytes would round small or ALPHA_8 tiles down to nothing
+				return getByteCount( bitmap );
 			}
 		};
 		// disk cache
@@ -68,19 +78,121 @@ public class MapTileCache {
 		});
 	}
 
+	/**
+	 * Bounds the in-memory cache to whatever the budget has left after tile (and downsample) reservations.
+	 * @param budget (MapTileMemoryBudget) the budget shared with tiles, or null to use only the cache's own limit
+	 */
+	public void setMemoryBudget( MapTileMemoryBudget budget ) {
+		memoryBudget = budget;
+		trimToBudget();
+	}
+	
+	public void trimToBudget() {
+		if ( memoryBudget == null || memoryCache == null ) {
+			return;
+		}
+		long available = memoryBudget.getAvailableBytes();
+		if ( available < memoryCache.size() ) {
+			memoryCache.trimToSize( (int) available );
+		}
+	}
+	
+	/**
+	 * Shares a bitmap that a live tile is already holding.  Its bytes are already reserved, so nothing more is.
+	 * Each call must be matched by a call to releaseHeldBitmap.
+	 * @param key (String) the key the bitmap was held with
+	 * @return (Bitmap) the held bitmap, or null if no live tile holds one with that key
+	 */
+	synchronized Bitmap acquireHeldBitmap( String key ) {
+		HeldBitmap h = held.get( key );
+		if ( h == null ) {
+			return null;
+		}
+		h.holders++;
+		return h.bitmap;
+	}
+	
+	/**
+	 * Takes a bitmap out of the lru while a tile shows it.  The reservation made for it passes to the cache, and is
+	 * released once the last tile holding the bitmap lets go.  Each call must be matched by a call to releaseHeldBitmap.
+	 * @param key (String) the key the bitmap is cached with
+	 * @param bitmap (Bitmap) the bitmap to hold
+	 * @param budget (MapTileMemoryBudget) the budget the bytes were reserved from, or null
+	 * @param bytes (long) the bytes reserved
+	 * @return (Bitmap) the bitmap to show - another tile's, if one got there first
+	 */
+	synchronized Bitmap holdBitmap( String key, Bitmap bitmap, MapTileMemoryBudget budget, long bytes ) {
+		HeldBitmap h = held.get( key );
+		if ( h != null ) {
+			// already counted, so what was reserved for this one goes back
+			h.holders++;
+			if ( budget != null ) {
+				budget.release( bytes );
+			}
+			return h.bitmap;
+		}
+		if ( memoryCache != null ) {
+			memoryCache.remove( key );
+		}
+		h = new HeldBitmap();
+		h.bitmap = bitmap;
+		h.holders = 1;
+		h.budget = budget;
+		h.bytes = bytes;
+		held.put( key, h );
+		return bitmap;
+	}
+	
+	/**
+	 * Lets go of a held bitmap.  Once no tile holds it, its bytes are released and it's returned to the lru.
+	 * @param key (String) the key the bitmap was held with
+	 */
+	synchronized void releaseHeldBitmap( String key ) {
+		HeldBitmap h = held.get( key );
+		if ( h == null || --h.holders > 0 ) {
+			return;
+		}
+		held.remove( key );
+		if ( h.budget != null ) {
+			h.budget.release( h.bytes );
+		}
+		if ( memoryCache != null ) {
+			memoryCache.put( key, h.bitmap );
+			trimToBudget();
+		}
+	}
+	
 	public void addBitmap( String key, Bitmap bitmap ) {
 		addBitmapToMemoryCache( key, bitmap );
 		addBitmapToDiskCache( key, bitmap );
 	}
 	
 	public Bitmap getBitmap( String key ) {
+		return getBitmap( key, Bitmap.Config.RGB_565 );
+	}
+	
+	/**
+	 * @param key (String) the key the bitmap was added with
+	 * @param config (Bitmap.Config) the pixel format to use if the bitmap has to be restored from the disk cache
+	 * @return (Bitmap) the cached bitmap, or null if it's not in either cache
+	 */
+	public Bitmap getBitmap( String key, Bitmap.Config config ) {
 		Bitmap bitmap = getBitmapFromMemoryCache( key );
 		if ( bitmap == null ) {
-			bitmap = getBitmapFromDiskCache( key );
+			bitmap = getBitmapFromDiskCache( key, config );
 		}
 		return bitmap;
 	}
 	
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	public static int getByteCount( Bitmap bitmap ) {
+		if ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1 ) {
+			return bitmap.getByteCount();
+		}
+		// emulate bitmap.getByteCount for APIs less than 12
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+	
 	public void destroy(){
 		memoryCache.evictAll();
 		memoryCache = null;
@@ -111,9 +223,11 @@ public class MapTileCache {
 		});		
 	}
 	
-	private void addBitmapToMemoryCache( String key, Bitmap bitmap ) {
-		if ( getBitmapFromMemoryCache( key ) == null ) {
+	private synchronized void addBitmapToMemoryCache( String key, Bitmap bitmap ) {
+		// a held bitmap goes back to the lru when it's released
+		if ( !held.containsKey( key ) && getBitmapFromMemoryCache( key ) == null ) {
 			memoryCache.put( key, bitmap );
+			trimToBudget();
 		}
 	}
 
@@ -121,7 +235,7 @@ public class MapTileCache {
 		return memoryCache.get( key );
 	}
 	
-	private void addBitmapToDiskCache( String key, Bitmap bitmap ) {
+	void addBitmapToDiskCache( String key, Bitmap bitmap ) {
 		if ( diskCache == null ) {
 			return;
 		}
@@ -135,7 +249,9 @@ public class MapTileCache {
 			OutputStream output = null;
 			try {
 				output = new BufferedOutputStream( editor.newOutputStream( 0 ), IO_BUFFER_SIZE );
-				boolean compressed = bitmap.compress( CompressFormat.JPEG, COMPRESSION_QUALITY, output );
+				// jpeg drops the alpha channel, so anything other than opaque 565 is stored losslessly
+				CompressFormat format = ( bitmap.getConfig() == Bitmap.Config.RGB_565 ) ? CompressFormat.JPEG : CompressFormat.PNG;
+				boolean compressed = bitmap.compress( format, COMPRESSION_QUALITY, output );
 				if ( compressed ) {
 					diskCache.flush();
 					editor.commit();
@@ -158,7 +274,7 @@ public class MapTileCache {
 		}
 	}
 	
-	private Bitmap getBitmapFromDiskCache( String key ) {
+	private Bitmap getBitmapFromDiskCache( String key, Bitmap.Config config ) {
 		if ( diskCache == null ) {
 			return null;
 		}
@@ -173,7 +289,9 @@ public class MapTileCache {
 			final InputStream input = snapshot.getInputStream( 0 );
 			if ( input != null ) {
 				BufferedInputStream buffered = new BufferedInputStream( input, IO_BUFFER_SIZE );
-				bitmap = BitmapFactory.decodeStream( buffered, null, BITMAPFACTORY_OPTIONS );
+				BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inPreferredConfig = config;
+				bitmap = BitmapFactory.decodeStream( buffered, null, options );
 			}
 		} catch ( IOException e ) {
 			
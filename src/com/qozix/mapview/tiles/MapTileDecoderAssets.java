@@ -8,7 +8,7 @@ import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
-public class MapTileDecoderAssets implements MapTileDecoder {
+public class MapTileDecoderAssets implements MapTileOptionsDecoder {
 
 	private static final BitmapFactory.Options OPTIONS = new BitmapFactory.Options();
 	static {
@@ -17,12 +17,17 @@ public class MapTileDecoderAssets implements MapTileDecoder {
 	
 	@Override
 	public Bitmap decode( String fileName, Context context ) {
+		return decode( fileName, context, OPTIONS );
+	}
+	
+	@Override
+	public Bitmap decode( String fileName, Context context, BitmapFactory.Options options ) {
 		AssetManager assets = context.getAssets();
 		try {
 			InputStream input = assets.open( fileName );
 			if ( input != null ) {
 				try {
-					return BitmapFactory.decodeStream( input, null, OPTIONS );										
+					return BitmapFactory.decodeStream( input, null, options );										
 				} catch ( OutOfMemoryError oom ) {
 					// oom - you can try sleeping (this method won't be called in the UI thread) or try again (or give up)
 				} catch ( Exception e ) {
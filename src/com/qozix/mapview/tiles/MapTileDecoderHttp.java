@@ -15,7 +15,7 @@ import android.util.Log;
  * Implementation of MapTileDecoder that loads bitmaps from a HTTP server
  * thanks to https://github.com/mohlendo for pointing out the need and a solution
  */
-public class MapTileDecoderHttp implements MapTileDecoder {
+public class MapTileDecoderHttp implements MapTileOptionsDecoder {
 
     private static final String TAG =  MapTileDecoderHttp.class.getSimpleName();
 
@@ -26,6 +26,11 @@ public class MapTileDecoderHttp implements MapTileDecoder {
 	
 	@Override
 	public Bitmap decode( String fileName, Context context ) {
+		return decode( fileName, context, OPTIONS );
+	}
+	
+	@Override
+	public Bitmap decode( String fileName, Context context, BitmapFactory.Options options ) {
         URL url;
 		try {
             url = new URL(fileName);
@@ -41,7 +46,7 @@ public class MapTileDecoderHttp implements MapTileDecoder {
             input = connection.getInputStream();
             if (input != null) {
                 try {
-                    return BitmapFactory.decodeStream( input, null, OPTIONS );
+                    return BitmapFactory.decodeStream( input, null, options );
                 } catch ( OutOfMemoryError oom ) {
                     // oom - you can try sleeping (this method won't be called in the UI thread) or try again (or give up)
                 } catch ( Exception e ) {
@@ -0,0 +1,88 @@
+package com.qozix.mapview.tiles;
+
+import android.graphics.Bitmap;
+
+/**
+ * Shared byte accounting for tile and downsample bitmaps.  Tiles reserve the size of their bitmap before decoding and
+ * release it when destroyed, and cached downsamples are reserved while they're cached.  The in-memory tile cache only
+ * holds bitmaps no tile is showing, and is trimmed to whatever the reservations leave available, so each bitmap is
+ * counted once.  A ceiling of 0 (the default) means unbounded.
+ */
+public class MapTileMemoryBudget {
+
+	private long ceiling;
+	private long tileBytes;
+
+	public synchronized void setCeiling( long bytes ) {
+		ceiling = Math.max( bytes, 0 );
+	}
+
+	public synchronized long getCeiling() {
+		return ceiling;
+	}
+
+	public synchronized boolean getIsBounded() {
+		return ceiling > 0;
+	}
+
+	/**
+	 * @param bytes (long) the number of bytes a tile needs
+	 * @return (boolean) true if the bytes fit under the ceiling and have been reserved, false if nothing was reserved
+	 */
+	public synchronized boolean reserve( long bytes ) {
+		if ( ceiling > 0 && tileBytes + bytes > ceiling ) {
+			return false;
+		}
+		tileBytes += bytes;
+		return true;
+	}
+
+	/**
+	 * Corrects a reservation once the real size is known, or claims bytes that are already allocated.  Doesn't check
+	 * the ceiling, since the memory's already spent.
+	 * @param delta (long) the bytes to add, or (if negative) give back
+	 */
+	public synchronized void adjust( long delta ) {
+		tileBytes = Math.max( tileBytes + delta, 0 );
+	}
+
+	public synchronized void release( long bytes ) {
+		tileBytes = Math.max( tileBytes - bytes, 0 );
+	}
+
+	/**
+	 * @return (long) bytes currently reserved by tile and downsample bitmaps
+	 */
+	public synchronized long getTileBytes() {
+		return tileBytes;
+	}
+
+	/**
+	 * @return (boolean) true if a ceiling is set and reservations are over it
+	 */
+	public synchronized boolean getIsOverCeiling() {
+		return ceiling > 0 && tileBytes > ceiling;
+	}
+
+	/**
+	 * @return (long) bytes left under the ceiling after tile reservations, or Long.MAX_VALUE if unbounded
+	 */
+	public synchronized long getAvailableBytes() {
+		if ( ceiling <= 0 ) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max( ceiling - tileBytes, 0 );
+	}
+
+	public static int estimateByteCount( int width, int height, Bitmap.Config config ) {
+		int bytesPerPixel;
+		if ( config == Bitmap.Config.ALPHA_8 ) {
+			bytesPerPixel = 1;
+		} else if ( config == Bitmap.Config.ARGB_8888 ) {
+			bytesPerPixel = 4;
+		} else {
+			bytesPerPixel = 2;
+		}
+		return width * height * bytesPerPixel;
+	}
+}
@@ -0,0 +1,16 @@
+package com.qozix.mapview.tiles;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Optional extension of {@link MapTileDecoder} for decoders that can honor BitmapFactory.Options supplied by the
+ * TileManager (e.g., an inSampleSize greater than 1 when tiles are displayed at a fraction of their actual size).
+ * Decoders that only implement MapTileDecoder will always be asked for full-resolution bitmaps.
+ */
+public interface MapTileOptionsDecoder extends MapTileDecoder {
+
+	public Bitmap decode( String fileName, Context context, BitmapFactory.Options options );
+
+}
@@ -1,28 +1,89 @@
 package com.qozix.mapview.tiles;
 
-import java.util.LinkedList;
-
 public class MapTilePool {
-	
-	private LinkedList<MapTile> employed = new LinkedList<MapTile>();
-	private LinkedList<MapTile> retired = new LinkedList<MapTile>();
-	
-	public MapTile employ(){
-		MapTile m = retired.poll();
-		if ( m == null ) {
-			m = new MapTile();
+
+	private static final int DEFAULT_CAPACITY = 128;
+
+	// retired tiles, stacked - employ and retire are both O(1)
+	private final MapTile[] retired;
+	private int size;
+
+	private int allocationCount;
+	private int reuseCount;
+
+	public MapTilePool() {
+		this( DEFAULT_CAPACITY );
+	}
+
+	/**
+	 * @param capacity (int) the maximum number of retired tiles held for reuse - tiles retired beyond that are left to gc
+	 */
+	public MapTilePool( int capacity ) {
+		retired = new MapTile[Math.max( capacity, 0 )];
+	}
+
+	public synchronized MapTile employ() {
+		if ( size > 0 ) {
+			size--;
+			MapTile m = retired[size];
+			retired[size] = null;
+			m.setIsPooled( false );
+			reuseCount++;
+			return m;
+		}
+		allocationCount++;
+		return new MapTile();
+	}
+
+	/**
+	 * Returns a tile to the pool.  The tile should already be destroyed, and must no longer be referenced by a render task.
+	 * Retiring a tile that's already pooled is ignored.
+	 * @param m (MapTile) the tile to retire
+	 */
+	public synchronized void retire( MapTile m ) {
+		if ( m == null || m.getIsPooled() ) {
+			return;
+		}
+		if ( size == retired.length ) {
+			return;
 		}
-		employed.add( m );
-		return m;
-	}
-	
-	public void retire( MapTile m ) {
-		employed.remove( m );
-		retired.add( m );
-	}
-	
-	public void retireAll() {
-		retired.addAll( employed );
-		employed.clear();
+		m.setIsPooled( true );
+		retired[size] = m;
+		size++;
+	}
+
+	public synchronized void clear() {
+		for ( int i = 0; i < size; i++ ) {
+			retired[i].setIsPooled( false );
+			retired[i] = null;
+		}
+		size = 0;
+	}
+
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return retired.length;
+	}
+
+	/**
+	 * @return (int) the number of tiles this pool has had to create because none were available for reuse
+	 */
+	public synchronized int getAllocationCount() {
+		return allocationCount;
+	}
+
+	/**
+	 * @return (int) the number of tiles this pool has handed out from its retired stack
+	 */
+	public synchronized int getReuseCount() {
+		return reuseCount;
+	}
+
+	public synchronized void resetCounts() {
+		allocationCount = 0;
+		reuseCount = 0;
 	}
 }
@@ -1,11 +1,19 @@
 package com.qozix.mapview.tiles;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.view.View;
 import android.widget.ImageView;
 
@@ -21,10 +29,32 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 	private static final String TAG = TileManager.class.getSimpleName();
 
 	private static final int RENDER_FLAG = 1;
+	// render delays range from the minimum (settled, or moving slowly) to the maximum (moving quickly)
 	private static final int RENDER_BUFFER = 250;
+	private static final int RENDER_BUFFER_MINIMUM = 32;
+	// additional delay, in ms, for each pixel per ms the viewport is moving
+	private static final int RENDER_BUFFER_PER_VELOCITY = 100;
+	
+	// upper bounds (ms) of the render latency histogram buckets - the last bucket holds anything longer
+	private static final int[] LATENCY_BUCKETS = { 16, 32, 64, 125, 250, 500, 1000 };
+	
+	private static final int MAXIMUM_SAMPLE_SIZE = 8;
+	
+	// while scrolling, newly exposed tiles are rendered in small batches, no more often than this (ms)
+	private static final int INCREMENTAL_RENDER_INTERVAL = 100;
+	private static final int MAXIMUM_INCREMENTAL_TILES = 16;
+	// during a gesture, rendered tiles are released once they're this many rows or columns outside the visible range
+	private static final int INCREMENTAL_PRUNE_MARGIN = 1;
 
 	private LinkedList<MapTile> scheduledToRender = new LinkedList<MapTile>();
-	private LinkedList<MapTile> alreadyRendered = new LinkedList<MapTile>();
+	private HashSet<MapTile> scheduledLookup = new HashSet<MapTile>();
+	// rendered tiles by position - any tile at the same zoom, row and column finds the one that's showing
+	private HashMap<MapTile, MapTile> alreadyRendered = new HashMap<MapTile, MapTile>();
+	
+	// tiles waiting to go back to the pool - held until no render task can still be touching them
+	private LinkedList<MapTile> retiring = new LinkedList<MapTile>();
+	private MapTilePool pool = new MapTilePool();
+	private int pendingRenderTasks = 0;
 
 	private MapTileDecoder decoder = new MapTileDecoderAssets();
 	private HashMap<Integer, ScalingLayout> tileGroups = new HashMap<Integer, ScalingLayout>();
@@ -32,18 +62,54 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 	private TileRenderListener renderListener;
 	
 	private MapTileCache cache;
+	private MapTileMemoryBudget memoryBudget = new MapTileMemoryBudget();
 	private ZoomLevel zoomLevelToRender;
 	private TileRenderTask lastRunRenderTask;
+	private TileRenderTask incrementalRenderTask;
 	private ScalingLayout currentTileGroup;
 	private ZoomManager zoomManager;
 
 	private int lastRenderedZoom = -1;
+	
+	private int sampleSize = 1;
+	private double sampleThreshold = 1;
+	
+	private Bitmap.Config bitmapConfig = Bitmap.Config.RGB_565;
 
 	private boolean renderIsCancelled = false;
 	private boolean renderIsSuppressed = false;
 	private boolean isRendering = false;
 	
 	private TileRenderHandler handler;
+	
+	// viewport motion, for throttling renders while moving
+	private int lastScrollX;
+	private int lastScrollY;
+	private long lastScrollTime;
+	private double scrollVelocity;
+	
+	// time of the earliest render request that hasn't been handled yet, or 0
+	private long renderRequestedAt;
+	
+	private long lastIncrementalRenderTime;
+	private boolean visibleRangeIsDirty;
+	
+	// continuous zoom - the level on the other side of the current scale is kept and cross-faded with the current level
+	private boolean continuousZoomEnabled = false;
+	private int secondaryZoom = -1;
+	// how much of the secondary level is showing, from 0 to 1
+	private float secondaryWeight;
+	private TileRenderTask secondaryRenderTask;
+	private LinkedList<MapTile> secondaryScheduled = new LinkedList<MapTile>();
+	private long lastSecondaryRenderTime;
+	
+	// while batched, render requests are held, and one render is issued when the outermost batch ends
+	private int renderBatchDepth = 0;
+	// a level decoded ahead of time for where the viewport is headed - kept until the batch that asked for it ends
+	private int prefetchZoom = -1;
+	private TileRenderTask prefetchRenderTask;
+	private LinkedList<MapTile> prefetchScheduled = new LinkedList<MapTile>();
+	private int[] renderLatencies = new int[LATENCY_BUCKETS.length + 1];
 
 	public TileManager( Context context, ZoomManager zm ) {
 		super( context );
@@ -60,6 +126,7 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		if ( shouldCache ){
 			if ( cache == null ){
 				cache = new MapTileCache( getContext() );
+				cache.setMemoryBudget( memoryBudget );
 			}
 		} else {
 			if ( cache != null ) {
@@ -69,11 +136,72 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		}
 	}
 	
+	/**
+	 * Tiles are decoded at 1/n of their size (n being a power of 2) while they're displayed at no more than
+	 * threshold/n of their size.  The default of 1 never stretches a decoded tile beyond its native resolution;
+	 * higher values trade some sharpness for memory (e.g., 1.2 decodes at half size once tiles are shown at 60% or less).
+	 * Changes take effect on the next render.
+	 * @param threshold (double) the largest displayed-to-decoded size ratio allowed before sampling down
+	 */
+	public void setSampleThreshold( double threshold ) {
+		sampleThreshold = threshold;
+	}
+	
+	/**
+	 * Sets the preferred pixel format for tile bitmaps, used when decoding, caching and restoring from the disk cache.
+	 * RGB_565 (the default) is cheapest for opaque tiles, ARGB_8888 preserves translucency, ALPHA_8 suits masks.
+	 * Applies to tiles decoded after the change.
+	 * @param config (Bitmap.Config) the preferred config for tile bitmaps
+	 */
+	public void setBitmapConfig( Bitmap.Config config ) {
+		bitmapConfig = config;
+	}
+	
+	/**
+	 * The pool that tiles are employed from and retired to.  Its counts show how many tiles have been allocated versus reused.
+	 * @return (MapTilePool) the pool of tiles used by this TileManager
+	 */
+	public MapTilePool getTilePool() {
+		return pool;
+	}
+	
+	/**
+	 * Caps the bytes used by tile bitmaps - those held by rendered tiles plus the in-memory cache.  While a ceiling
+	 * is set, tile groups for other zoom levels are torn down rather than hidden, and tiles that won't fit aren't decoded.
+	 * @param bytes (long) the ceiling in bytes, or 0 for no ceiling (the default)
+	 */
+	public void setMemoryCeiling( long bytes ) {
+		memoryBudget.setCeiling( bytes );
+		if ( cache != null ) {
+			cache.trimToBudget();
+		}
+	}
+	
+	public MapTileMemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * In continuous zoom mode, the tile groups of the two levels that bracket the current scale are both kept, with
+	 * the more detailed one faded in according to the scale's position between them, instead of one snapping to the
+	 * other at a level boundary.  Decoding favors whichever of the two the scale is approaching.  The fade requires
+	 * Honeycomb or later; on earlier versions both levels are kept but not faded.
+	 * @param enabled (boolean) true to keep and cross-fade adjacent levels, false (the default) to show one level at a time
+	 */
+	public void setContinuousZoomEnabled( boolean enabled ) {
+		continuousZoomEnabled = enabled;
+		updateCrossFade();
+	}
+	
 	public void setTileRenderListener( TileRenderListener listener ){
 		renderListener = listener;
 	}
 
 	public void requestRender() {
+		// the batch renders once, when it ends
+		if ( renderBatchDepth > 0 ) {
+			return;
+		}
 		// if we're requesting it, we must really want one
 		renderIsCancelled = false;
 		renderIsSuppressed = false;
@@ -85,13 +213,283 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		if ( handler.hasMessages( RENDER_FLAG ) ) {
 			handler.removeMessages( RENDER_FLAG );
 		}
-		// give it enough buffer that (generally) successive calls will be captured
-		handler.sendEmptyMessageDelayed( RENDER_FLAG, RENDER_BUFFER );
+		markRenderRequested();
+		// give it enough buffer that (generally) successive calls will be captured - more if we're moving quickly
+		handler.sendEmptyMessageDelayed( RENDER_FLAG, getRenderBuffer() );
+	}
+	
+	/**
+	 * Renders as soon as the UI thread is free, without waiting to capture successive requests.
+	 * Intended for when the viewport has settled (e.g., scroll, fling or zoom complete) or the caller needs tiles right away.
+	 */
+	public void requestImmediateRender() {
+		if ( renderBatchDepth > 0 ) {
+			return;
+		}
+		renderIsCancelled = false;
+		renderIsSuppressed = false;
+		if ( zoomLevelToRender == null ) {
+			return;
+		}
+		if ( handler.hasMessages( RENDER_FLAG ) ) {
+			handler.removeMessages( RENDER_FLAG );
+		}
+		markRenderRequested();
+		handler.sendEmptyMessage( RENDER_FLAG );
+	}
+	
+	/**
+	 * Lets the TileManager track how fast the viewport is moving, so renders can be throttled while it moves quickly.
+	 * @param x (int) current scroll x position
+	 * @param y (int) current scroll y position
+	 */
+	public void onScrollChanged( int x, int y ) {
+		long now = SystemClock.uptimeMillis();
+		long elapsed = now - lastScrollTime;
+		// if it's been still for a while, start fresh
+		if ( elapsed > RENDER_BUFFER ) {
+			scrollVelocity = 0;
+		} else if ( elapsed > 0 ) {
+			double distance = Math.abs( x - lastScrollX ) + Math.abs( y - lastScrollY );
+			// smooth it out a bit, since scroll events don't arrive at regular intervals
+			scrollVelocity = ( scrollVelocity + ( distance / elapsed ) ) * 0.5;
+		}
+		lastScrollX = x;
+		lastScrollY = y;
+		lastScrollTime = now;
+		// start on whatever scrolled into view, rather than waiting for the gesture to end
+		renderExposedTiles();
+		renderSecondaryLevel();
+	}
+	
+	/**
+	 * Holds render requests until the matching endRenderBatch, so a change made in several steps (e.g., scale, then scroll)
+	 * is rendered once, for where it ends up, rather than for each step along the way.  Batches can be nested.
+	 */
+	public void beginRenderBatch() {
+		renderBatchDepth++;
+	}
+	
+	/**
+	 * Ends a batch started with beginRenderBatch.  When the outermost batch ends, a single render is requested
+	 * for the viewport as it is then.
+	 */
+	public void endRenderBatch() {
+		if ( renderBatchDepth == 0 ) {
+			return;
+		}
+		renderBatchDepth--;
+		if ( renderBatchDepth > 0 ) {
+			return;
+		}
+		// if we landed on the prefetched level, its tiles are already rendered - otherwise the next cleanup takes them
+		prefetchZoom = -1;
+		requestImmediateRender();
+	}
+	
+	public boolean getIsBatchingRenders() {
+		return renderBatchDepth > 0;
+	}
+	
+	/**
+	 * Starts decoding the tiles for a viewport the map is headed to (e.g., the end of an animation), so they're ready
+	 * when it arrives.  Only applies inside a render batch - the level is kept until the batch ends.
+	 * @param scale (double) the destination scale
+	 * @param region (Rect) the destination viewport, in pixels at that scale
+	 */
+	public void prefetch( double scale, Rect region ) {
+		if ( renderBatchDepth == 0 || renderIsCancelled ) {
+			return;
+		}
+		// the level the animation will settle on, hysteresis and all
+		int zoom = zoomManager.getZoomLevelIndexForDestination( scale );
+		ZoomLevel zoomLevel = zoomManager.getZoomLevel( zoom );
+		if ( zoomLevel == null ) {
+			return;
+		}
+		// one destination at a time
+		cancelPrefetchRender();
+		prefetchZoom = zoom;
+		ScalingLayout tileGroup = getTileGroup( zoom );
+		updateViewClip( tileGroup, zoomManager.getComputedLevelWidth( zoom ), zoomManager.getComputedLevelHeight( zoom ) );
+		tileGroup.setScale( 1 / zoomManager.getZoomLevelScale( zoom ) );
+		// it's decoded now, but not shown until it's the current level
+		if ( tileGroup != currentTileGroup && zoom != secondaryZoom ) {
+			tileGroup.setVisibility( View.GONE );
+		}
+		double relativeScale = scale / zoomManager.getZoomLevelScale( zoom );
+		// the destination's range is computed on the side - the level's own range may be describing the current viewport
+		LinkedList<MapTile> unloaded = zoomLevel.getUnloadedIntersections( pool, Integer.MAX_VALUE, zoom, relativeScale, region );
+		if ( unloaded.size() == 0 ) {
+			return;
+		}
+		int prefetchSampleSize = computeSampleSize( relativeScale );
+		for ( MapTile m : unloaded ) {
+			m.setSampleSize( prefetchSampleSize );
+			m.setBitmapConfig( bitmapConfig );
+			zoomLevel.setTileInFlight( m.getRow(), m.getColumn() );
+		}
+		// like the secondary level, these are kept apart from the scheduled list so the current level's renders leave them alone
+		releasePrefetchScheduled();
+		prefetchScheduled = unloaded;
+		prefetchRenderTask = new TileRenderTask( this, unloaded, true );
+		pendingRenderTasks++;
+		prefetchRenderTask.execute();
+	}
+	
+	private void releasePrefetchScheduled() {
+		for ( MapTile m : prefetchScheduled ) {
+			if ( m.getImageView() == null ) {
+				retiring.add( m );
+			}
+		}
+		prefetchScheduled = new LinkedList<MapTile>();
+	}
+	
+	private void cancelPrefetchRender() {
+		if ( prefetchRenderTask != null ) {
+			if ( prefetchRenderTask.getStatus() != AsyncTask.Status.FINISHED ) {
+				prefetchRenderTask.cancel( true );
+			}
+		}
+	}
+	
+	// levels other than the current one that are still in use, and shouldn't be cleaned up
+	private boolean isRetainedZoom( int zoom ) {
+		return zoom == secondaryZoom || zoom == prefetchZoom;
+	}
+	
+	// adds newly exposed tiles to the current set without cancelling anything that's already underway
+	private void renderExposedTiles() {
+		// suppression holds off full renders during a gesture, but a hard cancel applies here too - and a batch holds everything
+		if ( renderIsCancelled || renderBatchDepth > 0 ) {
+			return;
+		}
+		if ( zoomLevelToRender == null ) {
+			return;
+		}
+		if ( zoomLevelToRender.updateVisibleRange() ) {
+			visibleRangeIsDirty = true;
+			pruneScheduledTiles();
+		}
+		if ( !visibleRangeIsDirty ) {
+			return;
+		}
+		// one batch at a time, at a limited rate, so the UI thread only has a handful of tiles to add per frame
+		if ( incrementalRenderTask != null && incrementalRenderTask.getStatus() != AsyncTask.Status.FINISHED ) {
+			return;
+		}
+		long now = SystemClock.uptimeMillis();
+		if ( now - lastIncrementalRenderTime < INCREMENTAL_RENDER_INTERVAL ) {
+			return;
+		}
+		lastIncrementalRenderTime = now;
+		visibleRangeIsDirty = false;
+		LinkedList<MapTile> exposed = zoomLevelToRender.getUnloadedIntersections( pool, MAXIMUM_INCREMENTAL_TILES );
+		if ( exposed.size() == 0 ) {
+			return;
+		}
+		// there may be more than fit in one batch
+		if ( exposed.size() == MAXIMUM_INCREMENTAL_TILES ) {
+			visibleRangeIsDirty = true;
+		}
+		for ( MapTile m : exposed ) {
+			m.setSampleSize( sampleSize );
+			m.setBitmapConfig( bitmapConfig );
+			zoomLevelToRender.setTileInFlight( m.getRow(), m.getColumn() );
+			// the scheduled list owns them now - they're retired when it's replaced, and protected from cleanup until then
+			scheduledToRender.add( m );
+			scheduledLookup.add( m );
+		}
+		incrementalRenderTask = new TileRenderTask( this, exposed, true );
+		pendingRenderTasks++;
+		incrementalRenderTask.execute();
+	}
+	
+	// full renders are held off during a gesture, so tiles it's left behind are released here instead of by cleanup
+	private void pruneScheduledTiles() {
+		int startRow = zoomLevelToRender.getVisibleStartRow() - INCREMENTAL_PRUNE_MARGIN;
+		int endRow = zoomLevelToRender.getVisibleEndRow() + INCREMENTAL_PRUNE_MARGIN;
+		int startColumn = zoomLevelToRender.getVisibleStartColumn() - INCREMENTAL_PRUNE_MARGIN;
+		int endColumn = zoomLevelToRender.getVisibleEndColumn() + INCREMENTAL_PRUNE_MARGIN;
+		LinkedList<MapTile> kept = new LinkedList<MapTile>();
+		boolean pruned = false;
+		for ( MapTile m : scheduledToRender ) {
+			// tiles that haven't been rendered yet still belong to the task decoding them
+			boolean isReleasable = m.getImageView() != null && zoomManager.getZoomLevel( m.getZoom() ) == zoomLevelToRender;
+			int row = m.getRow();
+			int column = m.getColumn();
+			boolean isInRange = row >= startRow && row < endRow && column >= startColumn && column < endColumn;
+			if ( !isReleasable || isInRange ) {
+				kept.add( m );
+				continue;
+			}
+			scheduledLookup.remove( m );
+			MapTile rendered = alreadyRendered.remove( m );
+			if ( rendered != null && rendered != m ) {
+				rendered.destroy();
+				retiring.add( rendered );
+			}
+			clearTileState( m );
+			m.destroy();
+			retiring.add( m );
+			pruned = true;
+		}
+		if ( pruned ) {
+			// replaced rather than modified, like everywhere else the scheduled list changes
+			scheduledToRender = kept;
+			flushRetiring();
+		}
+	}
+	
+	private int getRenderBuffer() {
+		// velocity is only meaningful while scroll events are still arriving
+		if ( SystemClock.uptimeMillis() - lastScrollTime > RENDER_BUFFER ) {
+			return RENDER_BUFFER_MINIMUM;
+		}
+		int buffer = RENDER_BUFFER_MINIMUM + (int) ( scrollVelocity * RENDER_BUFFER_PER_VELOCITY );
+		return Math.min( buffer, RENDER_BUFFER );
+	}
+	
+	private void markRenderRequested() {
+		if ( renderRequestedAt == 0 ) {
+			renderRequestedAt = SystemClock.uptimeMillis();
+		}
+	}
+	
+	private void recordRenderLatency() {
+		if ( renderRequestedAt == 0 ) {
+			return;
+		}
+		long latency = SystemClock.uptimeMillis() - renderRequestedAt;
+		int bucket = 0;
+		while ( bucket < LATENCY_BUCKETS.length && latency > LATENCY_BUCKETS[bucket] ) {
+			bucket++;
+		}
+		renderLatencies[bucket]++;
+	}
+	
+	/**
+	 * Counts of renders by the time between the earliest request and the start of decoding, in ms.
+	 * Each bucket i holds latencies up to getRenderLatencyBuckets()[i]; the final bucket holds everything longer.
+	 * @return (int[]) a copy of the histogram
+	 */
+	public int[] getRenderLatencyHistogram() {
+		return renderLatencies.clone();
+	}
+	
+	public static int[] getRenderLatencyBuckets() {
+		return LATENCY_BUCKETS.clone();
+	}
+	
+	public void resetRenderLatencyHistogram() {
+		renderLatencies = new int[LATENCY_BUCKETS.length + 1];
 	}
 
 	public void cancelRender() {
 		// hard cancel - this applies to *all* tasks, not just the currently executing task
 		renderIsCancelled = true;
+		renderRequestedAt = 0;
 		// if the currently executing task isn't null...
 		if ( lastRunRenderTask != null ) {
 			// ... and it's in a cancellable state
@@ -100,13 +498,42 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 				lastRunRenderTask.cancel( true );
 			}
 		}
-		// give it to gc
-		lastRunRenderTask = null;
+		cancelIncrementalRender();
+		cancelSecondaryRender();
+		cancelPrefetchRender();
+	}
+	
+	private void cancelSecondaryRender() {
+		if ( secondaryRenderTask != null ) {
+			if ( secondaryRenderTask.getStatus() != AsyncTask.Status.FINISHED ) {
+				secondaryRenderTask.cancel( true );
+			}
+		}
+	}
+	
+	private void cancelIncrementalRender() {
+		if ( incrementalRenderTask != null ) {
+			if ( incrementalRenderTask.getStatus() != AsyncTask.Status.FINISHED ) {
+				incrementalRenderTask.cancel( true );
+			}
+		}
+	}
+
+	/**
+	 * @return (double) the fraction of tiles intersecting the viewport at the current zoom level that are showing, from 0 to 1
+	 */
+	public double getCoverage() {
+		if ( zoomLevelToRender == null ) {
+			return 0;
+		}
+		return zoomLevelToRender.getVisibleCoverage();
 	}
 
 	public void suppressRender() {
 		// this will prevent new tasks from starting, but won't actually cancel the currently executing task
 		renderIsSuppressed = true;
+		// latency is measured from the next request
+		renderRequestedAt = 0;
 	}
 
 	public void updateTileSet() {
@@ -126,7 +553,7 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		// grab reference to this zoom level, so we can get it's tile set for comparison to viewport
 		zoomLevelToRender = zoomManager.getCurrentZoomLevel();
 		// fetch appropriate child
-		currentTileGroup = getCurrentTileGroup();
+		currentTileGroup = getTileGroup( zoom );
 		// made it this far, so currentTileGroup should be valid, so update clipping
 		updateViewClip( currentTileGroup );
 		// get the appropriate zoom
@@ -137,6 +564,162 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		currentTileGroup.setVisibility( View.VISIBLE );
 		// bring it to top of stack
 		currentTileGroup.bringToFront();
+		// the level that brackets the scale with this one might have changed
+		updateCrossFade();
+	}
+
+	private void updateCrossFade() {
+		int zoom = zoomManager.getZoom();
+		// wait until the tile set has caught up with the zoom manager
+		if ( currentTileGroup == null || zoom != lastRenderedZoom ) {
+			return;
+		}
+		int secondary = -1;
+		int upper = -1;
+		float fraction = 1;
+		if ( continuousZoomEnabled && zoomManager.getNumZoomLevels() > 1 ) {
+			double scale = zoomManager.getScale();
+			upper = zoomManager.getZoomLevelIndexForScale( scale );
+			int lower = upper - 1;
+			if ( lower > -1 ) {
+				double upperScale = zoomManager.getZoomLevelScale( upper );
+				double lowerScale = zoomManager.getZoomLevelScale( lower );
+				// position between the two levels - in log space, so it moves evenly as the scale multiplies
+				fraction = (float) ( Math.log( scale / lowerScale ) / Math.log( upperScale / lowerScale ) );
+				fraction = Math.max( 0, Math.min( fraction, 1 ) );
+				// only bracket the current level (it might be locked elsewhere mid-gesture), and only while the other is showing
+				if ( zoom == upper && fraction < 1 ) {
+					secondary = lower;
+				} else if ( zoom == lower && fraction > 0 ) {
+					secondary = upper;
+				}
+			}
+		}
+		if ( secondary != secondaryZoom ) {
+			releaseSecondaryLevel();
+			if ( secondary > -1 ) {
+				ScalingLayout tileGroup = getTileGroup( secondary );
+				updateViewClip( tileGroup, zoomManager.getComputedLevelWidth( secondary ), zoomManager.getComputedLevelHeight( secondary ) );
+				tileGroup.setScale( 1 / zoomManager.getZoomLevelScale( secondary ) );
+				tileGroup.setVisibility( View.VISIBLE );
+				// the more detailed level goes on top, so it's the one that fades
+				if ( secondary == upper ) {
+					tileGroup.bringToFront();
+				}
+				secondaryZoom = secondary;
+			}
+		}
+		if ( secondaryZoom == -1 ) {
+			return;
+		}
+		secondaryWeight = ( secondaryZoom == upper ) ? fraction : 1 - fraction;
+		ScalingLayout upperGroup = tileGroups.get( upper );
+		ScalingLayout lowerGroup = tileGroups.get( upper - 1 );
+		setTileGroupAlpha( lowerGroup, 1 );
+		setTileGroupAlpha( upperGroup, fraction );
+		renderSecondaryLevel();
+	}
+
+	private void releaseSecondaryLevel() {
+		if ( secondaryZoom == -1 ) {
+			return;
+		}
+		cancelSecondaryRender();
+		releaseSecondaryScheduled();
+		ScalingLayout tileGroup = tileGroups.get( secondaryZoom );
+		if ( tileGroup != null ) {
+			setTileGroupAlpha( tileGroup, 1 );
+		}
+		// if it's become the current level, its tiles are the ones showing now - and a prefetched level is still wanted
+		if ( secondaryZoom != zoomManager.getZoom() && secondaryZoom != prefetchZoom ) {
+			Iterator<MapTile> tiles = alreadyRendered.values().iterator();
+			while ( tiles.hasNext() ) {
+				MapTile m = tiles.next();
+				if ( m.getZoom() == secondaryZoom ) {
+					clearTileState( m );
+					m.destroy();
+					tiles.remove();
+					retiring.add( m );
+				}
+			}
+			ZoomLevel zoomLevel = zoomManager.getZoomLevel( secondaryZoom );
+			if ( zoomLevel != null ) {
+				zoomLevel.clearTilesInFlight();
+			}
+			if ( tileGroup != null ) {
+				tileGroup.setVisibility( View.GONE );
+			}
+		} else if ( currentTileGroup != null ) {
+			setTileGroupAlpha( currentTileGroup, 1 );
+		}
+		secondaryZoom = -1;
+		secondaryWeight = 0;
+		flushRetiring();
+	}
+
+	// like renderExposedTiles, but for the secondary level - additive, rate limited, and never cancelled by the current level's renders
+	private void renderSecondaryLevel() {
+		if ( secondaryZoom == -1 || renderIsCancelled || renderBatchDepth > 0 ) {
+			return;
+		}
+		ZoomLevel zoomLevel = zoomManager.getZoomLevel( secondaryZoom );
+		if ( zoomLevel == null ) {
+			return;
+		}
+		double relativeScale = zoomManager.getScale() / zoomManager.getZoomLevelScale( secondaryZoom );
+		zoomLevel.updateVisibleRange( relativeScale );
+		if ( secondaryRenderTask != null && secondaryRenderTask.getStatus() != AsyncTask.Status.FINISHED ) {
+			return;
+		}
+		long now = SystemClock.uptimeMillis();
+		if ( now - lastSecondaryRenderTime < INCREMENTAL_RENDER_INTERVAL ) {
+			return;
+		}
+		LinkedList<MapTile> unloaded = zoomLevel.getUnloadedIntersections( pool, MAXIMUM_INCREMENTAL_TILES, secondaryZoom );
+		if ( unloaded.size() == 0 ) {
+			return;
+		}
+		lastSecondaryRenderTime = now;
+		// the last batch is done, so anything it didn't render can go
+		releaseSecondaryScheduled();
+		int secondarySampleSize = computeSampleSize( relativeScale );
+		for ( MapTile m : unloaded ) {
+			m.setSampleSize( secondarySampleSize );
+			m.setBitmapConfig( bitmapConfig );
+			zoomLevel.setTileInFlight( m.getRow(), m.getColumn() );
+		}
+		// kept apart from the scheduled list, since renders for the current level don't cancel this task
+		secondaryScheduled = unloaded;
+		secondaryRenderTask = new TileRenderTask( this, unloaded, true );
+		pendingRenderTasks++;
+		secondaryRenderTask.execute();
+	}
+
+	private void releaseSecondaryScheduled() {
+		for ( MapTile m : secondaryScheduled ) {
+			if ( m.getImageView() == null ) {
+				retiring.add( m );
+			}
+		}
+		secondaryScheduled = new LinkedList<MapTile>();
+	}
+
+	// a secondary level that's mostly showing is the one being approached, so it gets to finish first
+	private boolean getSecondaryHasPriority() {
+		if ( secondaryZoom == -1 || secondaryWeight <= 0.5f ) {
+			return false;
+		}
+		return secondaryRenderTask != null && secondaryRenderTask.getStatus() != AsyncTask.Status.FINISHED;
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private void setTileGroupAlpha( View tileGroup, float alpha ) {
+		if ( tileGroup == null ) {
+			return;
+		}
+		if ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB ) {
+			tileGroup.setAlpha( alpha );
+		}
 	}
 
 	public boolean getIsRendering() {
@@ -147,15 +730,25 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		// suppress and cancel renders
 		suppressRender();
 		cancelRender();		
-		// destroy all tiles
-		for ( MapTile m : scheduledToRender ) {
-			m.destroy();
-		}
-		scheduledToRender.clear();
-		for ( MapTile m : alreadyRendered ) {
+		// destroy all tiles - a task might still be reading the scheduled list, so replace it rather than clearing it
+		retiring.addAll( scheduledToRender );
+		scheduledToRender = new LinkedList<MapTile>();
+		scheduledLookup.clear();
+		for ( MapTile m : alreadyRendered.values() ) {
 			m.destroy();
+			retiring.add( m );
 		}
 		alreadyRendered.clear();
+		for ( int i = 0; i < zoomManager.getNumZoomLevels(); i++ ) {
+			zoomManager.getZoomLevel( i ).clearTiles();
+		}
+		// nothing's left to fade, so start over on the next scale change
+		releaseSecondaryScheduled();
+		secondaryZoom = -1;
+		secondaryWeight = 0;
+		releasePrefetchScheduled();
+		prefetchZoom = -1;
+		flushRetiring();
 		// the above should clear everything, but let's be redundant
 		for ( ScalingLayout tileGroup : tileGroups.values() ) {
 			int totalChildren = tileGroup.getChildCount();
@@ -167,6 +760,7 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 				}
 			}
 			tileGroup.removeAllViews();
+			setTileGroupAlpha( tileGroup, 1 );
 		}
 		// clear the cache
 		if ( cache != null ) {
@@ -174,8 +768,7 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		}
 	}
 
-	private ScalingLayout getCurrentTileGroup() {
-		int zoom = zoomManager.getZoom();
+	private ScalingLayout getTileGroup( int zoom ) {
 		// if a tile group has already been created and registered, return it
 		if ( tileGroups.containsKey( zoom ) ) {
 			return tileGroups.get( zoom );
@@ -203,34 +796,98 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		if ( zoomLevelToRender == null ) {
 			return;
 		}
+		// anything requested before a batch started is covered by the render at its end
+		if ( renderBatchDepth > 0 ) {
+			return;
+		}
+		// let the level being approached catch up first
+		if ( getSecondaryHasPriority() ) {
+			handler.sendEmptyMessageDelayed( RENDER_FLAG, RENDER_BUFFER_MINIMUM );
+			return;
+		}
 		// decode and render the bitmaps asynchronously
 		beginRenderTask();
+		// this request has been handled, whether or not there was anything new to render
+		renderRequestedAt = 0;
 	}
 
 	private void updateViewClip( View view ) {
+		updateViewClip( view, zoomManager.getComputedCurrentWidth(), zoomManager.getComputedCurrentHeight() );
+	}
+
+	private void updateViewClip( View view, int width, int height ) {
 		LayoutParams lp = (LayoutParams) view.getLayoutParams();
-		lp.width = zoomManager.getComputedCurrentWidth();
-		lp.height = zoomManager.getComputedCurrentHeight();
+		lp.width = width;
+		lp.height = height;
 		view.setLayoutParams( lp );
 	}
 
+	// the largest power of 2 that doesn't shrink tiles below their on-screen size (as allowed by sampleThreshold)
+	private int computeSampleSize() {
+		return computeSampleSize( zoomManager.getRelativeScale() );
+	}
+
+	private int computeSampleSize( double scale ) {
+		int computed = 1;
+		while ( computed < MAXIMUM_SAMPLE_SIZE && scale * ( computed << 1 ) <= sampleThreshold ) {
+			computed <<= 1;
+		}
+		return computed;
+	}
+
 	private void beginRenderTask() {
 		// find all matching tiles
-		LinkedList<MapTile> intersections = zoomLevelToRender.getIntersections();
-		// if it's the same list, don't bother
-		if ( scheduledToRender.equals( intersections ) ) {
+		LinkedList<MapTile> intersections = zoomLevelToRender.getIntersections( pool );
+		// tiles only need to be decoded again if the scale crossed a sampling threshold
+		int computedSampleSize = computeSampleSize();
+		// if it's the same set at the same resolution, don't bother
+		boolean isSameSet = scheduledLookup.size() == intersections.size() && scheduledLookup.containsAll( intersections );
+		if ( computedSampleSize == sampleSize && isSameSet ) {
+			// nothing else has seen these, so they can go straight back
+			for ( MapTile m : intersections ) {
+				pool.retire( m );
+			}
 			return;
 		}
-		// if we made it here, then replace the old list with the new list
+		sampleSize = computedSampleSize;
+		// decoders that don't accept options always produce full-size bitmaps
+		int decodedSampleSize = ( decoder instanceof MapTileOptionsDecoder ) ? sampleSize : 1;
+		// tiles already showing at this resolution don't need to be decoded again
+		LinkedList<MapTile> renderList = new LinkedList<MapTile>();
+		for ( MapTile m : intersections ) {
+			m.setSampleSize( sampleSize );
+			m.setBitmapConfig( bitmapConfig );
+			MapTile rendered = alreadyRendered.get( m );
+			if ( rendered == null || rendered.getDecodedSampleSize() != decodedSampleSize ) {
+				renderList.add( m );
+			}
+		}
+		// if we made it here, then replace the old list with the new list - whatever wasn't rendered from the old one can be retired
+		for ( MapTile m : scheduledToRender ) {
+			if ( m.getImageView() == null ) {
+				retiring.add( m );
+			}
+		}
 		scheduledToRender = intersections;
-		// cancel task if it's already running
+		scheduledLookup.clear();
+		scheduledLookup.addAll( intersections );
+		// cancel tasks if they're already running - this one covers everything they would have
 		if ( lastRunRenderTask != null ) {
 			if ( lastRunRenderTask.getStatus() != AsyncTask.Status.FINISHED ) {
 				lastRunRenderTask.cancel( true );
 			}
 		}
-		// start a new one
-		lastRunRenderTask = new TileRenderTask( this );
+		cancelIncrementalRender();
+		visibleRangeIsDirty = false;
+		// whatever those tasks left in flight won't be coming from them now
+		clearTilesInFlight( secondaryZoom );
+		for ( MapTile m : renderList ) {
+			zoomLevelToRender.setTileInFlight( m.getRow(), m.getColumn() );
+		}
+		// start a new one - it gets its own list, so there's nothing to modify concurrently
+		lastRunRenderTask = new TileRenderTask( this, renderList, false );
+		pendingRenderTasks++;
+		recordRenderLatency();
 		lastRunRenderTask.execute();
 	}
 
@@ -243,29 +900,101 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 	}
 
 	private void cleanup() {
-		// start with all rendered tiles...
-		LinkedList<MapTile> condemned = new LinkedList<MapTile>( alreadyRendered );
-		// now remove all those that were just qualified
-		condemned.removeAll( scheduledToRender );
-		// for whatever's left, destroy and remove from list
-		for ( MapTile m : condemned ) {
-			m.destroy();
-			alreadyRendered.remove( m );
+		// destroy and remove any rendered tile that wasn't just qualified
+		Iterator<MapTile> iterator = alreadyRendered.values().iterator();
+		while ( iterator.hasNext() ) {
+			MapTile m = iterator.next();
+			// secondary and prefetched levels aren't part of the scheduled set, but they're still in use
+			if ( !scheduledLookup.contains( m ) && !isRetainedZoom( m.getZoom() ) ) {
+				clearTileState( m );
+				m.destroy();
+				iterator.remove();
+				retiring.add( m );
+			}
 		}
-		// hide all other groups
-		for ( ScalingLayout tileGroup : tileGroups.values() ) {
-			if ( currentTileGroup == tileGroup ) {
+		hideInactiveTileGroups();
+	}
+
+	private void hideInactiveTileGroups() {
+		// with a ceiling, other levels' tiles can't be kept around in case we zoom back
+		if ( memoryBudget.getIsBounded() ) {
+			removeInactiveTileGroups();
+			return;
+		}
+		for ( Map.Entry<Integer, ScalingLayout> entry : tileGroups.entrySet() ) {
+			ScalingLayout tileGroup = entry.getValue();
+			if ( currentTileGroup == tileGroup || isRetainedZoom( entry.getKey() ) ) {
 				continue;
 			}
 			tileGroup.setVisibility( View.GONE );
 		}
 	}
 
+	private void removeInactiveTileGroups() {
+		int zoom = zoomManager.getZoom();
+		Iterator<MapTile> tiles = alreadyRendered.values().iterator();
+		while ( tiles.hasNext() ) {
+			MapTile m = tiles.next();
+			if ( m.getZoom() != zoom && !isRetainedZoom( m.getZoom() ) ) {
+				clearTileState( m );
+				m.destroy();
+				tiles.remove();
+				retiring.add( m );
+			}
+		}
+		Iterator<Map.Entry<Integer, ScalingLayout>> groups = tileGroups.entrySet().iterator();
+		while ( groups.hasNext() ) {
+			Map.Entry<Integer, ScalingLayout> entry = groups.next();
+			ScalingLayout tileGroup = entry.getValue();
+			if ( currentTileGroup == tileGroup || isRetainedZoom( entry.getKey() ) ) {
+				continue;
+			}
+			tileGroup.removeAllViews();
+			removeView( tileGroup );
+			groups.remove();
+		}
+	}
+
+	private void clearTilesInFlight() {
+		clearTilesInFlight( -1 );
+	}
+
+	private void clearTilesInFlight( int except ) {
+		for ( int i = 0; i < zoomManager.getNumZoomLevels(); i++ ) {
+			if ( i != except ) {
+				zoomManager.getZoomLevel( i ).clearTilesInFlight();
+			}
+		}
+	}
+
+	private void clearTileState( MapTile m ) {
+		ZoomLevel zoomLevel = zoomManager.getZoomLevel( m.getZoom() );
+		if ( zoomLevel != null ) {
+			zoomLevel.clearTile( m.getRow(), m.getColumn() );
+		}
+	}
+
+	// tasks run in parallel, and a cancelled task may still be decoding tiles from its list, so wait until none are outstanding
+	private void flushRetiring() {
+		if ( pendingRenderTasks > 0 ) {
+			return;
+		}
+		for ( MapTile m : retiring ) {
+			m.destroy();
+			pool.retire( m );
+		}
+		retiring.clear();
+	}
+
 	/*
 	 *  render tasks (invoked in asynctask's thread)
 	 */
 	
-	void onRenderTaskPreExecute(){
+	void onRenderTaskPreExecute( TileRenderTask task ){
+		// incremental tasks just fill in gaps - they're not reported as renders
+		if ( task.getIsIncremental() ) {
+			return;
+		}
 		// set a flag that we're working
 		isRendering = true;
 		// notify anybody interested
@@ -274,18 +1003,41 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		}
 	}
 	
-	void onRenderTaskCancelled() {
+	void onRenderTaskCancelled( TileRenderTask task ) {
+		pendingRenderTasks--;
+		// once nothing's running, nothing's in flight
+		if ( pendingRenderTasks == 0 ) {
+			clearTilesInFlight();
+		}
+		if ( task == prefetchRenderTask ) {
+			releasePrefetchScheduled();
+		}
+		flushRetiring();
+		if ( task.getIsIncremental() ) {
+			return;
+		}
 		if ( renderListener != null ) {
 			renderListener.onRenderCancelled();
 		}
 		isRendering = false;
 	}
 	
-	void onRenderTaskPostExecute() {
+	void onRenderTaskPostExecute( TileRenderTask task ) {
+		// an incremental task only added tiles, so there's nothing to clean up or report
+		if ( task.getIsIncremental() ) {
+			pendingRenderTasks--;
+			if ( task == prefetchRenderTask ) {
+				releasePrefetchScheduled();
+			}
+			flushRetiring();
+			return;
+		}
 		// set flag that we're done
 		isRendering = false;
+		pendingRenderTasks--;
 		// everything's been rendered, so get rid of the old tiles
 		cleanup();
+		flushRetiring();
 		// recurse - request another round of render - if the same intersections are discovered, recursion will end anyways
 		requestRender();
 		// notify anybody interested
@@ -294,23 +1046,43 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 		}
 	}
 	
-	LinkedList<MapTile> getRenderList(){
-		return new LinkedList<MapTile>( scheduledToRender );
-	}
-	
 	void decodeIndividualTile( MapTile m ) {
-		m.decode( getContext(), cache, decoder );
+		m.decode( getContext(), cache, decoder, memoryBudget );
 	}
 
 	void renderIndividualTile( MapTile m ) {
-		if ( alreadyRendered.contains( m ) ) {
+		// the zoom might have changed since the task started, so find the level and group this tile belongs to
+		ZoomLevel zoomLevel = zoomManager.getZoomLevel( m.getZoom() );
+		ScalingLayout tileGroup = tileGroups.get( m.getZoom() );
+		if ( zoomLevel == null || tileGroup == null ) {
+			return;
+		}
+		// don't show a blank tile for a failed decode - leave the spot open so it's tried again when the list changes
+		if ( !m.getHasBitmap() ) {
+			zoomLevel.setTileFailed( m.getRow(), m.getColumn() );
 			return;
 		}
+		zoomLevel.setTileLoaded( m.getRow(), m.getColumn() );
+		MapTile rendered = alreadyRendered.get( m );
+		if ( rendered != null ) {
+			// if it's showing the same resolution, leave it alone
+			if ( rendered.getDecodedSampleSize() == m.getDecodedSampleSize() ) {
+				return;
+			}
+			// otherwise swap in the newly decoded version
+			rendered.destroy();
+			alreadyRendered.remove( rendered );
+			retiring.add( rendered );
+		}
 		m.render( getContext() );
-		alreadyRendered.add( m );
+		alreadyRendered.put( m, m );
 		ImageView i = m.getImageView();
 		LayoutParams l = getLayoutFromTile( m );
-		currentTileGroup.addView( i, l );
+		tileGroup.addView( i, l );
+		// once the current level has the viewport covered, the levels behind it can go
+		if ( zoomLevel == zoomLevelToRender && zoomLevelToRender.isVisibleRangeLoaded() ) {
+			hideInactiveTileGroups();
+		}
 	}
 	
 	boolean getRenderIsCancelled() {
@@ -325,6 +1097,7 @@ public class TileManager extends ScalingLayout implements ZoomListener {
 	@Override
 	public void onZoomScaleChanged( double scale ) {
 		setScale( scale );
+		updateCrossFade();
 	}
 
 }
@@ -9,18 +9,27 @@ import com.qozix.widgets.AsyncTask;
 class TileRenderTask extends AsyncTask<Void, MapTile, Void> {
 
 	private final WeakReference<TileManager> reference;
+	private final LinkedList<MapTile> renderList;
+	private final boolean isIncremental;
 	
 	// package level access
-	TileRenderTask( TileManager tm ) {
+	TileRenderTask( TileManager tm, LinkedList<MapTile> list, boolean incremental ) {
 		super();
 		reference = new WeakReference<TileManager>( tm );
+		renderList = list;
+		isIncremental = incremental;
+	}
+	
+	// incremental tasks add to the current tile set rather than replacing it
+	boolean getIsIncremental() {
+		return isIncremental;
 	}
 	
 	@Override
 	protected void onPreExecute() {
 		final TileManager tileManager = reference.get();
 		if ( tileManager != null ) {
-			tileManager.onRenderTaskPreExecute();
+			tileManager.onRenderTaskPreExecute( this );
 		}		
 	}
 
@@ -30,8 +39,6 @@ class TileRenderTask extends AsyncTask<Void, MapTile, Void> {
 		TileManager tileManager = reference.get();
 		// if not go ahead, but check again in each iteration
 		if ( tileManager != null ) {
-			// avoid concurrent modification exceptions by duplicating
-			LinkedList<MapTile> renderList = tileManager.getRenderList();
 			// start rendering, checking each iteration if we need to break out
 			for ( MapTile m : renderList ) {
 				// check again if we've been stopped or gc'ed
@@ -85,7 +92,7 @@ class TileRenderTask extends AsyncTask<Void, MapTile, Void> {
 		TileManager tileManager = reference.get();
 		// if not go ahead but check other cancel states
 		if ( tileManager != null ) {
-			tileManager.onRenderTaskPostExecute();
+			tileManager.onRenderTaskPostExecute( this );
 		}
 	}
 
@@ -95,7 +102,7 @@ class TileRenderTask extends AsyncTask<Void, MapTile, Void> {
 		TileManager tileManager = reference.get();
 		// if not go ahead but check other cancel states
 		if ( tileManager != null ) {
-			tileManager.onRenderTaskCancelled();
+			tileManager.onRenderTaskCancelled( this );
 		}
 	}
 
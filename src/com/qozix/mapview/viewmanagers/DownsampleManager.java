@@ -1,42 +1,167 @@
 package com.qozix.mapview.viewmanagers;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.view.View;
 
+import com.qozix.mapview.tiles.MapTileCache;
 import com.qozix.mapview.tiles.MapTileDecoder;
 import com.qozix.mapview.tiles.MapTileDecoderAssets;
+import com.qozix.mapview.tiles.MapTileMemoryBudget;
+import com.qozix.mapview.tiles.MapTileOptionsDecoder;
+import com.qozix.widgets.AsyncTask;
 
 public class DownsampleManager {
 
 	private MapTileDecoder decoder = new MapTileDecoderAssets();
 	
+	private Bitmap.Config bitmapConfig = Bitmap.Config.RGB_565;
+
+	// downsamples aren't necessarily small, so only a few are kept
+	private static final int MAX_CACHED = 4;
+
+	// least recently shown first - each bitmap's bytes are reserved from the memory budget while it's cached
+	private LinkedHashMap<String, Bitmap> cache = new LinkedHashMap<String, Bitmap>( 16, 0.75f, true );
+	
+	private MapTileMemoryBudget memoryBudget;
+
+	private DownsampleTask lastRunDownsampleTask;
+
 	private String lastFileName;
 	
+	// bumped whenever the cache is invalidated, so tasks started before then don't cache stale bitmaps
+	private int generation;
+
 	public void setDecoder( MapTileDecoder d ){
 		decoder = d;
+		// anything decoded by the previous decoder is from a different source
+		invalidateCache();
 	}
-	
-	public void setDownsample( View view, String fileName ) {		
+
+	/**
+	 * Sets the preferred pixel format for downsample bitmaps.  Only honored by decoders that implement MapTileOptionsDecoder.
+	 * @param config (Bitmap.Config) the preferred config for downsample bitmaps
+	 */
+	public void setBitmapConfig( Bitmap.Config config ) {
+		if ( config != bitmapConfig ) {
+			bitmapConfig = config;
+			invalidateCache();
+		}
+	}
+
+	/**
+	 * Counts cached downsamples against a budget shared with tile bitmaps.  While the budget's over its ceiling, only
+	 * the downsample being shown is kept.
+	 * @param budget (MapTileMemoryBudget) the budget to reserve from, or null
+	 */
+	public void setMemoryBudget( MapTileMemoryBudget budget ) {
+		long bytes = getCachedBytes();
+		if ( memoryBudget != null ) {
+			memoryBudget.release( bytes );
+		}
+		memoryBudget = budget;
+		if ( memoryBudget != null ) {
+			memoryBudget.adjust( bytes );
+		}
+		trimToBudget();
+	}
+
+	/**
+	 * Evicts cached downsamples, least recently shown first, until there are no more than a few and the budget is
+	 * under its ceiling.  The one being shown is kept.
+	 */
+	public void trimToBudget() {
+		Iterator<Map.Entry<String, Bitmap>> iterator = cache.entrySet().iterator();
+		while ( iterator.hasNext() ) {
+			boolean isOver = ( memoryBudget != null && memoryBudget.getIsOverCeiling() );
+			if ( !isOver && cache.size() <= MAX_CACHED ) {
+				return;
+			}
+			Map.Entry<String, Bitmap> entry = iterator.next();
+			if ( entry.getKey().equals( lastFileName ) ) {
+				continue;
+			}
+			iterator.remove();
+			releaseBytes( entry.getValue() );
+		}
+	}
+
+	public void setDownsample( View view, String fileName ) {
 		if ( fileName == null ) {
+			cancelDownsampleTask();
 			setDownsampleBackground( view, null );
 			lastFileName = null;
 			return;
 		}
 		if ( fileName.equals( lastFileName )) {
 			return;
-		}		
+		}
 		lastFileName = fileName;
+		// whatever was pending is stale now
+		cancelDownsampleTask();
+		// if we've seen this one before, swap it in right away
+		Bitmap cached = cache.get( fileName );
+		if ( cached != null ) {
+			setDownsampleBitmap( view, cached );
+			return;
+		}
+		// otherwise decode off the UI thread - the previous downsample stays visible until this one is ready
+		lastRunDownsampleTask = new DownsampleTask( this, view, fileName, decoder, bitmapConfig, generation );
+		lastRunDownsampleTask.execute();
+	}
+
+	public void clear() {
+		cancelDownsampleTask();
+		invalidateCache();
+		lastFileName = null;
+	}
+	
+	private void invalidateCache() {
+		if ( memoryBudget != null ) {
+			memoryBudget.release( getCachedBytes() );
+		}
+		cache.clear();
+		generation++;
+	}
+
+	private long getCachedBytes() {
+		long bytes = 0;
+		for ( Bitmap bitmap : cache.values() ) {
+			bytes += MapTileCache.getByteCount( bitmap );
+		}
+		return bytes;
+	}
+
+	private void releaseBytes( Bitmap bitmap ) {
+		if ( memoryBudget != null ) {
+			memoryBudget.release( MapTileCache.getByteCount( bitmap ) );
+		}
+	}
+
+	private void cancelDownsampleTask() {
+		if ( lastRunDownsampleTask != null ) {
+			if ( lastRunDownsampleTask.getStatus() != AsyncTask.Status.FINISHED ) {
+				lastRunDownsampleTask.cancel( true );
+			}
+		}
+		lastRunDownsampleTask = null;
+	}
+
+	private void setDownsampleBitmap( View view, Bitmap bitmap ) {
 		Context context = view.getContext();
-		Bitmap bitmap = decoder.decode( fileName, context );
 		BitmapDrawable bitmapDrawable = new BitmapDrawable( context.getResources(), bitmap );
 		setDownsampleBackground( view, bitmapDrawable );
 	}
-	
+
 	// suppress deprecation because we're doing the only thing we can do with Android breaking API
 	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
 	@SuppressWarnings("deprecation")
@@ -47,4 +172,42 @@ public class DownsampleManager {
 			view.setBackground( drawable );
 		}
 	}
+
+	/*
+	 *  downsample tasks
+	 */
+
+	// invoked in asynctask's thread, with the decoder and config the task was created with
+	static Bitmap decodeIndividualDownsample( String fileName, Context context, MapTileDecoder decoder, Bitmap.Config config ) {
+		if ( decoder instanceof MapTileOptionsDecoder ) {
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inPreferredConfig = config;
+			return ( (MapTileOptionsDecoder) decoder ).decode( fileName, context, options );
+		}
+		return decoder.decode( fileName, context );
+	}
+
+	// invoked on the UI thread
+	void onDownsampleTaskPostExecute( View view, String fileName, Bitmap bitmap, int taskGeneration ) {
+		if ( bitmap == null ) {
+			return;
+		}
+		// decoded from a source (or config) that's since been replaced
+		if ( taskGeneration != generation ) {
+			return;
+		}
+		// already decoded, so it's claimed whether or not it fits - older ones are evicted to make up for it
+		Bitmap replaced = cache.put( fileName, bitmap );
+		if ( replaced != null ) {
+			releaseBytes( replaced );
+		}
+		if ( memoryBudget != null ) {
+			memoryBudget.adjust( MapTileCache.getByteCount( bitmap ) );
+		}
+		trimToBudget();
+		// only swap it in if it's still the one we want
+		if ( fileName.equals( lastFileName ) ) {
+			setDownsampleBitmap( view, bitmap );
+		}
+	}
 }
@@ -0,0 +1,61 @@
+package com.qozix.mapview.viewmanagers;
+
+import java.lang.ref.WeakReference;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.View;
+
+import com.qozix.mapview.tiles.MapTileDecoder;
+import com.qozix.widgets.AsyncTask;
+
+class DownsampleTask extends AsyncTask<Void, Void, Bitmap> {
+
+	private final WeakReference<DownsampleManager> reference;
+	private final WeakReference<View> viewReference;
+	private final String fileName;
+	private final Context context;
+	// snapshots, so the worker thread never reads the manager's fields as they change
+	private final MapTileDecoder decoder;
+	private final Bitmap.Config config;
+	private final int generation;
+
+	// package level access
+	DownsampleTask( DownsampleManager dm, View view, String f, MapTileDecoder d, Bitmap.Config c, int g ) {
+		super();
+		reference = new WeakReference<DownsampleManager>( dm );
+		viewReference = new WeakReference<View>( view );
+		fileName = f;
+		context = view.getContext();
+		decoder = d;
+		config = c;
+		generation = g;
+	}
+
+	@Override
+	protected Bitmap doInBackground( Void... params ) {
+		// have we been stopped or dereffed?
+		DownsampleManager downsampleManager = reference.get();
+		if ( downsampleManager == null ) {
+			return null;
+		}
+		// quit if task has been cancelled or replaced
+		if ( isCancelled() ) {
+			return null;
+		}
+		// the heavy lift - this might be a large image or a network request
+		return DownsampleManager.decodeIndividualDownsample( fileName, context, decoder, config );
+	}
+
+	@Override
+	protected void onPostExecute( Bitmap bitmap ) {
+		// have we been stopped or dereffed?
+		DownsampleManager downsampleManager = reference.get();
+		View view = viewReference.get();
+		// if not, hand the bitmap back on the UI thread to be cached and swapped in
+		if ( downsampleManager != null && view != null ) {
+			downsampleManager.onDownsampleTaskPostExecute( view, fileName, bitmap, generation );
+		}
+	}
+
+}
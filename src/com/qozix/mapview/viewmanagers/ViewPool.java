@@ -1,16 +1,17 @@
 package com.qozix.mapview.viewmanagers;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashSet;
 
 import android.content.Context;
-import android.util.Log;
 import android.view.View;
 
 public class ViewPool<E extends View> {
 
 	private ViewFactory<E> factory;
-	private LinkedList<View> employed = new LinkedList<View>();
-	private LinkedList<View> unemployed = new LinkedList<View>();
+	// employed views are looked up on every retire, and unemployed ones are stacked, so both are O(1)
+	private HashSet<View> employed = new HashSet<View>();
+	private ArrayList<View> unemployed = new ArrayList<View>();
 
 	public ViewPool( ViewFactory<E> f ) {
 		factory = f;
@@ -18,22 +19,33 @@ public class ViewPool<E extends View> {
 
 	public View employView( Context context ) {
 		View v;
-		if ( unemployed.size() > 0 ) {
-			v = unemployed.get( 0 );
-			unemployed.remove( v );
+		int size = unemployed.size();
+		if ( size > 0 ) {
+			v = unemployed.remove( size - 1 );
 		} else {
 			v = factory.fetch( context );
 		}
 		employed.add( v );
-		Log.d( "ViewPool", "employed.size=" + employed.size() + ", unemployed.size=" + unemployed.size());
 		return v;
 	}
 
 	public void retireView( View v ) {
-		if ( employed.contains( v ) ) {
-			employed.remove( v );
+		if ( employed.remove( v ) ) {
 			unemployed.add( v );
 		}
 	}
 
-}
\ No newline at end of file
+	public int getEmployedCount() {
+		return employed.size();
+	}
+
+	public int getUnemployedCount() {
+		return unemployed.size();
+	}
+
+	public void clear() {
+		employed.clear();
+		unemployed.clear();
+	}
+
+}
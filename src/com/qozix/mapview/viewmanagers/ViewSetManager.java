@@ -2,77 +2,166 @@ package com.qozix.mapview.viewmanagers;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import android.view.View;
-import android.view.ViewParent;
+
+/*
+ * Shows each managed view only within its range of zoom levels (inclusive).  Views are indexed by the first and
+ * last levels of their ranges, so a level change only visits views whose ranges start or end between the old
+ * level and the new one, rather than every view.
+ */
 
 public class ViewSetManager {
 
-	private HashMap<Integer, HashSet<View>> map = new HashMap<Integer, HashSet<View>>();
-	
+	// each view's range - { min, max }
+	private HashMap<View, int[]> ranges = new HashMap<View, int[]>();
+	private HashMap<Integer, HashSet<View>> byMinimum = new HashMap<Integer, HashSet<View>>();
+	private HashMap<Integer, HashSet<View>> byMaximum = new HashMap<Integer, HashSet<View>>();
+
+	private int currentLevel = -1;
+
+	/**
+	 * @param level (int) the zoom level
+	 * @return (HashSet<View>) a snapshot of the views shown at that level - changes to it aren't reflected here
+	 */
 	public HashSet<View> getSetAtLevel( int level ) {
-		if(!map.containsKey( level )){
-			HashSet<View> viewSet = new HashSet<View>();
-			map.put( level, viewSet );
+		HashSet<View> viewSet = new HashSet<View>();
+		for(Map.Entry<View, int[]> e : ranges.entrySet()){
+			if( isInRange( e.getValue(), level ) ) {
+				viewSet.add( e.getKey() );
+			}
 		}
-		return map.get( level );
+		return viewSet;
 	}
-	
+
 	public void addViewAtLevel( View view, int level ){
-		HashSet<View> viewSet = getSetAtLevel( level );
-		viewSet.add( view );
+		addViewAtLevels( view, level, level );
 	}
-	
+
+	/**
+	 * Shows a view at every zoom level from min to max, inclusive, and hides it at all others.  A view that's
+	 * already managed has its range replaced.
+	 * @param view (View) the view to manage
+	 * @param min (int) the first zoom level it's shown at
+	 * @param max (int) the last zoom level it's shown at
+	 */
+	public void addViewAtLevels( View view, int min, int max ){
+		removeView( view );
+		int[] range = { Math.min( min, max ), Math.max( min, max ) };
+		ranges.put( view, range );
+		getSet( byMinimum, range[0] ).add( view );
+		getSet( byMaximum, range[1] ).add( view );
+		if( currentLevel > -1 ) {
+			view.setVisibility( isInRange( range, currentLevel ) ? View.VISIBLE : View.GONE );
+		}
+	}
+
+	// ranges can only be narrowed from their ends - a level inside a range leaves it as it is
 	public void removeViewAtLevel( View view, int level ) {
-		HashSet<View> viewSet = map.get( level );
-		viewSet.remove( view );
+		int[] range = ranges.get( view );
+		if( range == null ) {
+			return;
+		}
+		if( range[0] == level && range[1] == level ) {
+			removeView( view );
+		} else if( range[0] == level ) {
+			addViewAtLevels( view, level + 1, range[1] );
+		} else if( range[1] == level ) {
+			addViewAtLevels( view, range[0], level - 1 );
+		}
 	}
-	
+
 	public void removeAllViewsAtLevel( int level ) {
-		map.remove( level );
+		for(View view : getSetAtLevel( level )){
+			removeViewAtLevel( view, level );
+		}
 	}
-	
+
 	public boolean removeView( View view ){
-		for(Entry<Integer, HashSet<View>> e : map.entrySet()){
-			HashSet<View> viewSet = e.getValue();
-			Iterator<View> iterator = viewSet.iterator();
-			while(iterator.hasNext()) {
-				View comparison = iterator.next();
-				if( comparison == view ) {
-					iterator.remove();
-					return true;
-				}
-			}
+		int[] range = ranges.remove( view );
+		if( range == null ) {
+			return false;
 		}
-		return false;
+		removeFromSet( byMinimum, range[0], view );
+		removeFromSet( byMaximum, range[1], view );
+		return true;
+	}
+
+	public void clear() {
+		ranges.clear();
+		byMinimum.clear();
+		byMaximum.clear();
 	}
-	
-	// remove all views from all sets that aren't in the view tree
-	public void purgeViewSets() {
-		for(Entry<Integer, HashSet<View>> e : map.entrySet()){
-			HashSet<View> viewSet = e.getValue();
-			Iterator<View> iterator = viewSet.iterator();
-			while(iterator.hasNext()) {
-				View view = iterator.next();
-				ViewParent parent = view.getParent();
-				if( parent == null ) {
-					iterator.remove();
-				}
+
+	public void updateDisplay( int level ){
+		if( level == currentLevel ) {
+			return;
+		}
+		// nothing's been shown or hidden yet, so everything needs to be
+		if( currentLevel == -1 ) {
+			for(Map.Entry<View, int[]> e : ranges.entrySet()) {
+				e.getKey().setVisibility( isInRange( e.getValue(), level ) ? View.VISIBLE : View.GONE );
+			}
+			currentLevel = level;
+			return;
+		}
+		int from = currentLevel;
+		currentLevel = level;
+		if( level > from ) {
+			// ranges that end before the new level were showing if they started by the old one
+			for(int i = from; i < level; i++){
+				setVisibility( byMaximum.get( i ), View.GONE, from, true );
+			}
+			// ranges that start after the old level are showing now if they reach the new one
+			for(int i = from + 1; i <= level; i++){
+				setVisibility( byMinimum.get( i ), View.VISIBLE, level, false );
+			}
+		} else {
+			for(int i = level + 1; i <= from; i++){
+				setVisibility( byMinimum.get( i ), View.GONE, from, false );
+			}
+			for(int i = level; i < from; i++){
+				setVisibility( byMaximum.get( i ), View.VISIBLE, level, true );
 			}
 		}
 	}
-	
-	public void updateDisplay( int level ){
-		for(Map.Entry<Integer, HashSet<View>> e : map.entrySet()) {
-			Integer intendedLevel = e.getKey();
-			HashSet<View> viewSet = e.getValue();
-			int visibility = intendedLevel.equals( level ) ? View.VISIBLE : View.GONE;
-			for(View v : viewSet) {
-				v.setVisibility( visibility );
+
+	// sets the visibility of views in the set whose ranges include the level given at their other end
+	private void setVisibility( HashSet<View> viewSet, int visibility, int level, boolean checkMinimum ) {
+		if( viewSet == null ) {
+			return;
+		}
+		for(View view : viewSet){
+			int[] range = ranges.get( view );
+			boolean reaches = checkMinimum ? range[0] <= level : range[1] >= level;
+			if( reaches ) {
+				view.setVisibility( visibility );
 			}
 		}
 	}
+
+	private static boolean isInRange( int[] range, int level ) {
+		return range[0] <= level && level <= range[1];
+	}
+
+	private static HashSet<View> getSet( HashMap<Integer, HashSet<View>> map, int level ) {
+		HashSet<View> viewSet = map.get( level );
+		if( viewSet == null ) {
+			viewSet = new HashSet<View>();
+			map.put( level, viewSet );
+		}
+		return viewSet;
+	}
+
+	private static void removeFromSet( HashMap<Integer, HashSet<View>> map, int level, View view ) {
+		HashSet<View> viewSet = map.get( level );
+		if( viewSet == null ) {
+			return;
+		}
+		viewSet.remove( view );
+		if( viewSet.isEmpty() ) {
+			map.remove( level );
+		}
+	}
 }
@@ -1,10 +1,12 @@
 package com.qozix.mapview.zoom;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import android.graphics.Rect;
 
 import com.qozix.mapview.tiles.MapTile;
+import com.qozix.mapview.tiles.MapTilePool;
 
 public class ZoomLevel implements Comparable<ZoomLevel> {
 
@@ -26,6 +28,17 @@ public class ZoomLevel implements Comparable<ZoomLevel> {
 	private ZoomManager zoomManager;
 	private Rect viewport = new Rect();
 
+	// visible tile range, rows sr to er and columns sc to ec (end exclusive), as of the last intersection check
+	private int sr;
+	private int er;
+	private int sc;
+	private int ec;
+
+	// tile states, indexed by row * columnCount + column
+	private BitSet loaded = new BitSet();
+	private BitSet inFlight = new BitSet();
+	private BitSet failed = new BitSet();
+
 	public ZoomLevel( ZoomManager zm, int mw, int mh, String p ) {
 		this( zm, mw, mh, p, null, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE );
 	}
@@ -46,35 +59,292 @@ public class ZoomLevel implements Comparable<ZoomLevel> {
 		downsample = d;
 		tileWidth = tw;
 		tileHeight = th;
-		rowCount = (int) ( mapHeight / tileHeight );
-		columnCount = (int) ( mapWidth / tileWidth );
+		// partial tiles at the right and bottom edges count too
+		rowCount = (int) Math.ceil( mapHeight / (double) tileHeight );
+		columnCount = (int) Math.ceil( mapWidth / (double) tileWidth );
 		area = (long) ( mapWidth * mapHeight );
 	}
 
 	public LinkedList<MapTile> getIntersections() {
+		return getIntersections( null );
+	}
+
+	/**
+	 * Finds the tiles that intersect the current viewport, drawing them from the pool provided rather than allocating new ones.
+	 * @param pool (MapTilePool) the pool to employ tiles from, or null to create new tiles
+	 * @return (LinkedList<MapTile>) the intersecting tiles
+	 */
+	public LinkedList<MapTile> getIntersections( MapTilePool pool ) {
 		int zoom = zoomManager.getZoom();
-		double scale = zoomManager.getRelativeScale();
-		double offsetWidth = tileWidth * scale;
-		double offsetHeight = tileHeight * scale;
 		LinkedList<MapTile> intersections = new LinkedList<MapTile>();
-		viewport.set( zoomManager.getComputedViewport() );
-		viewport.top = Math.max( viewport.top, 0 );
-		viewport.left = Math.max( viewport.left, 0 );
-		viewport.right = Math.min( viewport.right, (int) ( mapWidth * scale ) );
-		viewport.bottom = Math.min( viewport.bottom, (int) ( mapHeight * scale ) );
-		int sr = (int) Math.floor( viewport.top / offsetHeight );
-		int er = (int) Math.ceil( viewport.bottom / offsetHeight );
-		int sc = (int) Math.floor( viewport.left / offsetWidth );
-		int ec = (int) Math.ceil( viewport.right / offsetWidth );
+		updateVisibleRange();
 		for ( int r = sr; r < er; r++ ) {
 			for ( int c = sc; c < ec; c++ ) {
-				MapTile m = new MapTile( zoom, r, c, tileWidth, tileHeight, pattern );
+				MapTile m = ( pool == null ) ? new MapTile() : pool.employ();
+				m.set( zoom, r, c, tileWidth, tileHeight, pattern );
 				intersections.add( m );
 			}
 		}
 		return intersections;
 	}
 
+	/**
+	 * Finds tiles in the visible range (as of the last check) that aren't loaded, in flight or failed.
+	 * @param pool (MapTilePool) the pool to employ tiles from, or null to create new tiles
+	 * @param limit (int) the most tiles to return
+	 * @return (LinkedList<MapTile>) up to limit tiles that still need to be decoded
+	 */
+	public LinkedList<MapTile> getUnloadedIntersections( MapTilePool pool, int limit ) {
+		return getUnloadedIntersections( pool, limit, zoomManager.getZoom() );
+	}
+
+	/**
+	 * @param pool (MapTilePool) the pool to employ tiles from, or null to create new tiles
+	 * @param limit (int) the most tiles to return
+	 * @param zoom (int) this level's index, for levels other than the current one
+	 * @return (LinkedList<MapTile>) up to limit tiles that still need to be decoded
+	 */
+	public LinkedList<MapTile> getUnloadedIntersections( MapTilePool pool, int limit, int zoom ) {
+		return getUnloadedIntersections( pool, limit, zoom, sr, er, sc, ec );
+	}
+
+	/**
+	 * Finds tiles intersecting an arbitrary region that aren't loaded, in flight or failed, without changing this
+	 * level's visible range - e.g., where the viewport is headed, rather than where it is.
+	 * @param pool (MapTilePool) the pool to employ tiles from, or null to create new tiles
+	 * @param limit (int) the most tiles to return
+	 * @param zoom (int) this level's index
+	 * @param scale (double) the scale this level will be displayed at, relative to its own size
+	 * @param region (Rect) the region, in pixels at that scale
+	 * @return (LinkedList<MapTile>) up to limit tiles that still need to be decoded
+	 */
+	public LinkedList<MapTile> getUnloadedIntersections( MapTilePool pool, int limit, int zoom, double scale, Rect region ) {
+		int[] range = new int[4];
+		computeRange( scale, region, range );
+		return getUnloadedIntersections( pool, limit, zoom, range[0], range[1], range[2], range[3] );
+	}
+	
+	private LinkedList<MapTile> getUnloadedIntersections( MapTilePool pool, int limit, int zoom, int startRow, int endRow, int startColumn, int endColumn ) {
+		LinkedList<MapTile> unloaded = new LinkedList<MapTile>();
+		for ( int r = startRow; r < endRow; r++ ) {
+			for ( int c = startColumn; c < endColumn; c++ ) {
+				if ( unloaded.size() == limit ) {
+					return unloaded;
+				}
+				int index = getTileIndex( r, c );
+				if ( loaded.get( index ) || inFlight.get( index ) || failed.get( index ) ) {
+					continue;
+				}
+				MapTile m = ( pool == null ) ? new MapTile() : pool.employ();
+				m.set( zoom, r, c, tileWidth, tileHeight, pattern );
+				unloaded.add( m );
+			}
+		}
+		return unloaded;
+	}
+
+	/**
+	 * Recomputes the range of tiles that intersect the current viewport.
+	 * @return (boolean) true if the range is different than it was at the last check
+	 */
+	public boolean updateVisibleRange() {
+		return updateVisibleRange( zoomManager.getRelativeScale() );
+	}
+
+	/**
+	 * Recomputes the range of tiles that intersect the current viewport, with this level displayed at the scale given -
+	 * for levels other than the current one.
+	 * @param scale (double) the scale this level is displayed at, relative to its own size
+	 * @return (boolean) true if the range is different than it was at the last check
+	 */
+	public boolean updateVisibleRange( double scale ) {
+		return updateVisibleRange( scale, zoomManager.getComputedViewport() );
+	}
+
+	/**
+	 * Recomputes the range of tiles that intersect an arbitrary region - e.g., where the viewport is headed, rather than where it is.
+	 * @param scale (double) the scale this level is displayed at, relative to its own size
+	 * @param region (Rect) the region, in pixels at that scale
+	 * @return (boolean) true if the range is different than it was at the last check
+	 */
+	public boolean updateVisibleRange( double scale, Rect region ) {
+		viewport.set( region );
+		clampToMap( viewport, scale );
+		int[] range = new int[4];
+		computeRange( scale, viewport, range );
+		boolean changed = ( range[0] != sr ) || ( range[1] != er ) || ( range[2] != sc ) || ( range[3] != ec );
+		sr = range[0];
+		er = range[1];
+		sc = range[2];
+		ec = range[3];
+		return changed;
+	}
+	
+	private void clampToMap( Rect r, double scale ) {
+		r.top = Math.max( r.top, 0 );
+		r.left = Math.max( r.left, 0 );
+		r.right = Math.min( r.right, (int) ( mapWidth * scale ) );
+		r.bottom = Math.min( r.bottom, (int) ( mapHeight * scale ) );
+	}
+	
+	// the tiles ( start row, end row, start column, end column - ends exclusive ) intersecting a region, without storing anything
+	private void computeRange( double scale, Rect region, int[] range ) {
+		double offsetWidth = tileWidth * scale;
+		double offsetHeight = tileHeight * scale;
+		int top = Math.max( region.top, 0 );
+		int left = Math.max( region.left, 0 );
+		int right = Math.min( region.right, (int) ( mapWidth * scale ) );
+		int bottom = Math.min( region.bottom, (int) ( mapHeight * scale ) );
+		range[0] = (int) Math.floor( top / offsetHeight );
+		range[1] = Math.min( (int) Math.ceil( bottom / offsetHeight ), rowCount );
+		range[2] = (int) Math.floor( left / offsetWidth );
+		range[3] = Math.min( (int) Math.ceil( right / offsetWidth ), columnCount );
+	}
+
+	public int getVisibleStartRow() {
+		return sr;
+	}
+
+	public int getVisibleEndRow() {
+		return er;
+	}
+
+	public int getVisibleStartColumn() {
+		return sc;
+	}
+
+	public int getVisibleEndColumn() {
+		return ec;
+	}
+
+	public boolean isTileVisible( int row, int column ) {
+		return row >= sr && row < er && column >= sc && column < ec;
+	}
+
+	/*
+	 * tile state - these aren't synchronized, so should only be touched from the UI thread
+	 */
+
+	private int getTileIndex( int row, int column ) {
+		return row * columnCount + column;
+	}
+
+	private boolean isTileInBounds( int row, int column ) {
+		return row >= 0 && row < rowCount && column >= 0 && column < columnCount;
+	}
+
+	public void setTileLoaded( int row, int column ) {
+		if ( isTileInBounds( row, column ) ) {
+			int index = getTileIndex( row, column );
+			loaded.set( index );
+			inFlight.clear( index );
+			failed.clear( index );
+		}
+	}
+
+	public void setTileInFlight( int row, int column ) {
+		if ( isTileInBounds( row, column ) ) {
+			inFlight.set( getTileIndex( row, column ) );
+		}
+	}
+
+	public void setTileFailed( int row, int column ) {
+		if ( isTileInBounds( row, column ) ) {
+			int index = getTileIndex( row, column );
+			failed.set( index );
+			inFlight.clear( index );
+		}
+	}
+
+	/**
+	 * Marks a tile as no longer loaded, in flight or failed (e.g., when it's removed from the view tree)
+	 * @param row (int) row of the tile
+	 * @param column (int) column of the tile
+	 */
+	public void clearTile( int row, int column ) {
+		if ( isTileInBounds( row, column ) ) {
+			int index = getTileIndex( row, column );
+			loaded.clear( index );
+			inFlight.clear( index );
+			failed.clear( index );
+		}
+	}
+
+	public void clearTilesInFlight() {
+		inFlight.clear();
+	}
+
+	public void clearTiles() {
+		loaded.clear();
+		inFlight.clear();
+		failed.clear();
+	}
+
+	public boolean isTileLoaded( int row, int column ) {
+		return isTileInBounds( row, column ) && loaded.get( getTileIndex( row, column ) );
+	}
+
+	public boolean isTileInFlight( int row, int column ) {
+		return isTileInBounds( row, column ) && inFlight.get( getTileIndex( row, column ) );
+	}
+
+	public boolean isTileFailed( int row, int column ) {
+		return isTileInBounds( row, column ) && failed.get( getTileIndex( row, column ) );
+	}
+
+	public int getVisibleTileCount() {
+		return Math.max( er - sr, 0 ) * Math.max( ec - sc, 0 );
+	}
+
+	public int getVisibleLoadedCount() {
+		return countVisible( loaded );
+	}
+
+	public int getVisibleInFlightCount() {
+		return countVisible( inFlight );
+	}
+
+	public int getVisibleFailedCount() {
+		return countVisible( failed );
+	}
+
+	/**
+	 * @return (boolean) true if every tile in the visible range has been loaded
+	 */
+	public boolean isVisibleRangeLoaded() {
+		// one search per row for the first gap
+		for ( int r = sr; r < er; r++ ) {
+			int start = getTileIndex( r, sc );
+			int end = getTileIndex( r, ec );
+			if ( loaded.nextClearBit( start ) < end ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return (double) the fraction of visible tiles that have been loaded, from 0 to 1 (1 if nothing is visible)
+	 */
+	public double getVisibleCoverage() {
+		int total = getVisibleTileCount();
+		if ( total == 0 ) {
+			return 1;
+		}
+		return getVisibleLoadedCount() / (double) total;
+	}
+
+	private int countVisible( BitSet bits ) {
+		int count = 0;
+		for ( int r = sr; r < er; r++ ) {
+			int end = getTileIndex( r, ec );
+			for ( int i = bits.nextSetBit( getTileIndex( r, sc ) ); i > -1 && i < end; i = bits.nextSetBit( i + 1 ) ) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	public int getTileWidth() {
 		return tileWidth;
 	}
@@ -1,60 +1,119 @@
 package com.qozix.mapview.zoom;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Iterator;
 
 /*
  * this collection should be:
  * 1. Unique
  * 2. Sorted
  * 3. Indexed
- * So it's either a TreeSet with a get(int index) method
- * or a LinkedList with uniqueness and sorting implemented
- * Since adding ZoomLevels is likely to be infrequent, and
- * done outside of heavy rendering work on the UI thread,
- * and fetching might happen rapidly and repeatedly in 
- * response to user or touch events, we're opting for
- * the sorted List (for now)
+ * Adding ZoomLevels is infrequent, and done outside of heavy rendering work,
+ * while fetching happens rapidly and repeatedly in response to user or touch
+ * events (every pinch move), so the levels are kept in a sorted array that's
+ * replaced (not modified) on each add.  Readers get O(1) index access and
+ * O(log n) scale lookup, and any snapshot they hold stays valid.
  */
- 
 
-public class ZoomLevelSet extends LinkedList<ZoomLevel> {
-	
-	private static final long serialVersionUID = -1742428277010988084L;
+public class ZoomLevelSet implements Iterable<ZoomLevel> {
+
+	private static final ZoomLevel[] EMPTY_LEVELS = new ZoomLevel[0];
+	private static final double[] EMPTY_SCALES = new double[0];
+
+	private ZoomLevel[] levels = EMPTY_LEVELS;
+	// each level's width relative to the largest level, ascending - the largest level is always 1
+	private double[] scales = EMPTY_SCALES;
 
 	public void addZoomLevel( ZoomLevel zoomLevel ) {
 		// ensure uniqueness
-		if( contains( zoomLevel ) ) {
-			return;
+		for ( ZoomLevel existing : levels ) {
+			if ( existing.equals( zoomLevel ) ) {
+				return;
+			}
+		}
+		// insert in sorted position, into a copy
+		int length = levels.length;
+		int position = 0;
+		while ( position < length && levels[position].compareTo( zoomLevel ) <= 0 ) {
+			position++;
 		}
-		add( zoomLevel );
-		// sort it
-		Collections.sort( this );
+		ZoomLevel[] updated = new ZoomLevel[length + 1];
+		System.arraycopy( levels, 0, updated, 0, position );
+		updated[position] = zoomLevel;
+		System.arraycopy( levels, position, updated, position + 1, length - position );
+		// precompute scales, so lookups don't have to
+		double largest = updated[length].getMapWidth();
+		double[] computed = new double[length + 1];
+		for ( int i = 0; i <= length; i++ ) {
+			computed[i] = updated[i].getMapWidth() / largest;
+		}
+		levels = updated;
+		scales = computed;
 	}
-	
-}
 
-/*
-public class ZoomLevelSet extends TreeSet<ZoomLevel> {
+	public ZoomLevel get( int index ) {
+		return levels[index];
+	}
 
-	private static final long serialVersionUID = -4028578060932067224L;
+	public ZoomLevel getFirst() {
+		return levels[0];
+	}
 
-	public ZoomLevel get( int index ) {
-		if ( index >= ( size() - 1) ) {
-			return null;
-		}
-		if ( index < 0 ) {
-			return null;
+	public ZoomLevel getLast() {
+		return levels[levels.length - 1];
+	}
+
+	public int size() {
+		return levels.length;
+	}
+
+	public boolean isEmpty() {
+		return levels.length == 0;
+	}
+
+	public void clear() {
+		levels = EMPTY_LEVELS;
+		scales = EMPTY_SCALES;
+	}
+
+	/**
+	 * @param index (int) index of the level
+	 * @return (double) the level's width relative to the largest level (which is 1)
+	 */
+	public double getScale( int index ) {
+		return scales[index];
+	}
+
+	/**
+	 * Finds the smallest level that can show the scale without stretching tiles - the first level whose
+	 * relative scale is at least the scale requested.  Scales beyond the largest level return the largest level.
+	 * @param scale (double) the scale to find a level for, relative to the largest level
+	 * @return (int) the index of the matching level, or -1 if the set is empty
+	 */
+	public int getIndexForScale( double scale ) {
+		double[] snapshot = scales;
+		int low = 0;
+		int high = snapshot.length - 1;
+		if ( high < 0 ) {
+			return -1;
 		}
-		Iterator<ZoomLevel> i = iterator();
-		while( i.hasNext() ) {
-			ZoomLevel e = i.next();
-			if ( index-- == 0 ) {
-				return e;
+		while ( low < high ) {
+			int middle = ( low + high ) >>> 1;
+			if ( snapshot[middle] < scale ) {
+				low = middle + 1;
+			} else {
+				high = middle;
 			}
 		}
-		return null;
+		return low;
 	}
-}
-*/
 
+	/**
+	 * @return (Iterator<ZoomLevel>) an iterator over a snapshot of the levels, smallest first - it doesn't support remove
+	 */
+	@Override
+	public Iterator<ZoomLevel> iterator() {
+		return Arrays.asList( levels ).iterator();
+	}
+
+}
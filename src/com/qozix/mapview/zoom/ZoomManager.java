@@ -1,6 +1,6 @@
 package com.qozix.mapview.zoom;
 
-import java.util.HashSet;
+import java.util.Arrays;
 
 import android.graphics.Rect;
 
@@ -10,10 +10,12 @@ public class ZoomManager {
 	private static final double PRECISION = 6;
 	private static final double DECIMAL = Math.pow( 10, PRECISION );
 	private static final double OFFSET = 1 / DECIMAL;
+	private static final double DEFAULT_HYSTERESIS = 0.05;
 	
 	private ZoomLevelSet zoomLevels = new ZoomLevelSet();
-	private HashSet<ZoomListener> zoomListeners = new HashSet<ZoomListener>();
-	private HashSet<ZoomSetupListener> zoomSetupListeners = new HashSet<ZoomSetupListener>();
+	// copy-on-write, so dispatch (on every scale change) iterates a plain array without allocating
+	private ZoomListener[] zoomListeners = new ZoomListener[0];
+	private ZoomSetupListener[] zoomSetupListeners = new ZoomSetupListener[0];
 
 	private double scale = 1;
 	private double minScale = 0;
@@ -29,6 +31,12 @@ public class ZoomManager {
 	
 	private int numZoomLevels;
 	
+	// per-level scale factors, precomputed from the levels' map widths when levels are added or reset
+	private double[] levelScales = new double[0];
+	private double[] invertedLevelScales = new double[0];
+	private int[] computedLevelWidths = new int[0];
+	private int[] computedLevelHeights = new int[0];
+	
 	private ZoomLevel currentZoomLevel;
 	private ZoomLevel highestZoomLevel;
 	private ZoomLevel lowestZoomLevel;
@@ -43,6 +51,14 @@ public class ZoomManager {
 	
 	private boolean zoomLocked = false;
 	
+	// how far (as a fraction of the boundary scale) the scale has to pass a level boundary before the level changes
+	private double hysteresis = DEFAULT_HYSTERESIS;
+	private boolean hysteresisBypassed = true;
+	// level changes chosen by the scale while unlocked, and times hysteresis kept the level where the scale alone would've changed it
+	private int levelSwitchCount;
+	private int heldSwitchCount;
+	private boolean isHoldingLevel;
+	
 	private int padding = 0;
 	private Rect viewport = new Rect();
 	private Rect computedViewport = new Rect();
@@ -51,6 +67,11 @@ public class ZoomManager {
 		return Math.round( s * DECIMAL ) / DECIMAL;
 	}
 	
+	/*
+	 * the static compute methods assume each level is twice the size of the one before it - instances derive
+	 * their scales from the actual widths of the levels registered, so they aren't limited to power-of-two steps
+	 */
+	
 	public static int computeZoom( double scale, int numZoomLevels ){
 		int zoom = (int) ( numZoomLevels + Math.floor( Math.log( scale - OFFSET ) / BASE_2 ) );
 		zoom = Math.max( zoom, 0 );
@@ -145,45 +166,133 @@ public class ZoomManager {
 		highestZoomLevel = zoomLevels.getLast();
 		lowestZoomLevel = zoomLevels.getFirst();
 		
-		// update zoom if unlocked
-		if(!zoomLocked){
-			zoom = computeZoom( scale, numZoomLevels );
+		// update zoom if unlocked - the smallest level that shows this scale without stretching
+		boolean isChosenByScale = !zoomLocked;
+		if(isChosenByScale){
+			zoom = getZoomForScale( scale );
 		}		
 		
 		// update current zoom level
 		currentZoomLevel = zoomLevels.get( zoom );
 		
 		// update computed scales
-		relativeScale = computeRelativeScale( scale, numZoomLevels, zoom );
-		computedScale = computeOffsetScale( scale, numZoomLevels, zoom );
-		invertedScale = computeInvertedScale( numZoomLevels, zoom );
+		relativeScale = getAtPrecision( scale * invertedLevelScales[zoom] );
+		invertedScale = invertedLevelScales[zoom];
+		computedScale = invertedScale + relativeScale - 1;
 		
 		// update current dimensions
 		baseMapWidth = currentZoomLevel.getMapWidth();
 		baseMapHeight = currentZoomLevel.getMapHeight();
-		computedCurrentWidth = (int) ( baseMapWidth * invertedScale );
-		computedCurrentHeight = (int) ( baseMapHeight * invertedScale );
+		computedCurrentWidth = computedLevelWidths[zoom];
+		computedCurrentHeight = computedLevelHeights[zoom];
 		currentScaledWidth = (int) ( computedCurrentWidth * scale );
 		currentScaledHeight = (int) ( computedCurrentHeight * scale );
 		
 		// broadcast scale change
 		if( changed ) {
-			for ( ZoomListener listener : zoomListeners ) {
-				listener.onZoomScaleChanged( scale );
+			ZoomListener[] listeners = zoomListeners;
+			for ( int i = 0; i < listeners.length; i++ ) {
+				listeners[i].onZoomScaleChanged( scale );
 			}			
 		}
 		
 		// if there's a change in zoom, update appropriate values
 		if ( zoom != lastZoom ) {			
+			// the level only changes here when the scale picked it - not when levels were reset while locked
+			if ( lastZoom > -1 && isChosenByScale ) {
+				levelSwitchCount++;
+			}
 			// notify all interested parties
-			for ( ZoomListener listener : zoomListeners ) {
-				listener.onZoomLevelChanged( lastZoom, zoom );
+			ZoomListener[] listeners = zoomListeners;
+			for ( int i = 0; i < listeners.length; i++ ) {
+				listeners[i].onZoomLevelChanged( lastZoom, zoom );
 			}
 			lastZoom = zoom;
 		}
 	
 	}
 
+	private int getZoomForScale( double s ) {
+		int candidate = zoomLevels.getIndexForScale( s - OFFSET );
+		// nothing to hold on to if the levels just changed (or we were told not to)
+		if ( hysteresisBypassed || hysteresis <= 0 ) {
+			hysteresisBypassed = false;
+			isHoldingLevel = false;
+			return candidate;
+		}
+		boolean isHeld = isLevelHeld( s, candidate );
+		// count each time the scale enters the band, not every update while it's there
+		if ( isHeld && !isHoldingLevel ) {
+			heldSwitchCount++;
+		}
+		isHoldingLevel = isHeld;
+		return isHeld ? zoom : candidate;
+	}
+	
+	// true if hysteresis keeps the current level, where the scale alone would pick the candidate
+	private boolean isLevelHeld( double s, int candidate ) {
+		if ( candidate > zoom ) {
+			// zooming in - keep the current level until its tiles would be stretched beyond the band
+			return s <= levelScales[zoom] * ( 1 + hysteresis );
+		} else if ( candidate < zoom ) {
+			// zooming out - keep the current level until the scale is clearly within the next level down
+			return s >= levelScales[zoom - 1] * ( 1 - hysteresis );
+		}
+		return false;
+	}
+	
+	/**
+	 * The level an unlocked change to a scale would settle on, from the current level - hysteresis included, so it
+	 * matches what's chosen when a locked gesture or animation ends there.  Nothing is changed.
+	 * @param s (double) a scale, relative to the largest level
+	 * @return (int) index of the level that would be shown at that scale
+	 */
+	public int getZoomLevelIndexForDestination( double s ) {
+		if ( numZoomLevels == 0 ) {
+			return 0;
+		}
+		int candidate = zoomLevels.getIndexForScale( s - OFFSET );
+		if ( hysteresisBypassed || hysteresis <= 0 ) {
+			return candidate;
+		}
+		return isLevelHeld( s, candidate ) ? zoom : candidate;
+	}
+	
+	/**
+	 * Sets how far past a level boundary the scale must move before the zoom level changes, so small movements
+	 * around a boundary don't swap levels back and forth.  e.g., 0.05 (the default) keeps the current level until
+	 * the scale is 5% beyond the boundary, in either direction.  0 switches exactly at the boundary.
+	 * @param band (double) the hysteresis band, as a fraction of the boundary scale
+	 */
+	public void setHysteresis( double band ) {
+		hysteresis = Math.max( band, 0 );
+	}
+	
+	public double getHysteresis() {
+		return hysteresis;
+	}
+	
+	/**
+	 * Level changes made by unlocked scale changes (e.g., a series of setScale calls) since the count was last reset.
+	 * The level can't change while locked, so a locked gesture or tween adds at most one, once it's unlocked.
+	 * @return (int) the number of times the zoom level has changed
+	 */
+	public int getLevelSwitchCount() {
+		return levelSwitchCount;
+	}
+	
+	/**
+	 * @return (int) the number of times hysteresis kept the current level where the scale alone would have changed it, since the count was last reset
+	 */
+	public int getHeldSwitchCount() {
+		return heldSwitchCount;
+	}
+	
+	public void resetLevelSwitchCount() {
+		levelSwitchCount = 0;
+		heldSwitchCount = 0;
+	}
+
 	public void lockZoom(){
 		zoomLocked = true;
 	}
@@ -193,27 +302,64 @@ public class ZoomManager {
 	}
 	
 	public void setZoom( int z ) {
+		if ( numZoomLevels == 0 ) {
+			return;
+		}
 		int maxZoom = numZoomLevels - 1;
 		z = Math.max(z, 0);
 		z = Math.min(z, maxZoom);
-		double s = 1 / (double) ( 1 << ( maxZoom - z ) );
-		setScale( s );
+		// an explicit level isn't subject to hysteresis
+		hysteresisBypassed = true;
+		setScale( levelScales[z] );
 	}
 
 	public void addZoomListener( ZoomListener l ) {
-		zoomListeners.add( l );
+		if ( l == null || indexOf( zoomListeners, l ) > -1 ) {
+			return;
+		}
+		ZoomListener[] updated = Arrays.copyOf( zoomListeners, zoomListeners.length + 1 );
+		updated[zoomListeners.length] = l;
+		zoomListeners = updated;
 	}
 
 	public void removeZoomListener( ZoomListener l ) {
-		zoomListeners.remove( l );
+		int index = indexOf( zoomListeners, l );
+		if ( index == -1 ) {
+			return;
+		}
+		ZoomListener[] updated = new ZoomListener[zoomListeners.length - 1];
+		System.arraycopy( zoomListeners, 0, updated, 0, index );
+		System.arraycopy( zoomListeners, index + 1, updated, index, updated.length - index );
+		zoomListeners = updated;
 	}
 	
 	public void addzoomSetupListener( ZoomSetupListener l ) {
-		zoomSetupListeners.add( l );
+		if ( l == null || indexOf( zoomSetupListeners, l ) > -1 ) {
+			return;
+		}
+		ZoomSetupListener[] updated = Arrays.copyOf( zoomSetupListeners, zoomSetupListeners.length + 1 );
+		updated[zoomSetupListeners.length] = l;
+		zoomSetupListeners = updated;
 	}
 
 	public void removezoomSetupListener( ZoomSetupListener l ) {
-		zoomSetupListeners.remove( l );
+		int index = indexOf( zoomSetupListeners, l );
+		if ( index == -1 ) {
+			return;
+		}
+		ZoomSetupListener[] updated = new ZoomSetupListener[zoomSetupListeners.length - 1];
+		System.arraycopy( zoomSetupListeners, 0, updated, 0, index );
+		System.arraycopy( zoomSetupListeners, index + 1, updated, index, updated.length - index );
+		zoomSetupListeners = updated;
+	}
+	
+	private static int indexOf( Object[] listeners, Object l ) {
+		for ( int i = 0; i < listeners.length; i++ ) {
+			if ( listeners[i].equals( l ) ) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	public void addZoomLevel( int wide, int tall, String pattern ) {
@@ -239,6 +385,7 @@ public class ZoomManager {
 	private void registerZoomLevel( ZoomLevel zoomLevel ) {
 		zoomLevels.addZoomLevel( zoomLevel );
 		numZoomLevels = zoomLevels.size();
+		updateLevelScales();
 		update( true );
 		for ( ZoomSetupListener listener : zoomSetupListeners ) {
 			listener.onZoomLevelAdded();
@@ -248,13 +395,62 @@ public class ZoomManager {
 	public void resetZoomLevels(){
 		zoomLevels.clear();
 		numZoomLevels = 0;
+		updateLevelScales();
 		update( true );
 	}
+	
+	// done once per change to the levels, so setScale doesn't have to
+	private void updateLevelScales() {
+		// indices have shifted, so the current level can't be held
+		hysteresisBypassed = true;
+		levelScales = new double[numZoomLevels];
+		invertedLevelScales = new double[numZoomLevels];
+		computedLevelWidths = new int[numZoomLevels];
+		computedLevelHeights = new int[numZoomLevels];
+		for ( int i = 0; i < numZoomLevels; i++ ) {
+			ZoomLevel zoomLevel = zoomLevels.get( i );
+			levelScales[i] = zoomLevels.getScale( i );
+			invertedLevelScales[i] = 1 / levelScales[i];
+			computedLevelWidths[i] = (int) ( zoomLevel.getMapWidth() * invertedLevelScales[i] );
+			computedLevelHeights[i] = (int) ( zoomLevel.getMapHeight() * invertedLevelScales[i] );
+		}
+	}
+	
+	/**
+	 * @param s (double) a scale, relative to the largest level
+	 * @return (int) index of the smallest level that shows that scale without stretching, ignoring hysteresis and locks
+	 */
+	public int getZoomLevelIndexForScale( double s ) {
+		return zoomLevels.getIndexForScale( s - OFFSET );
+	}
+	
+	public int getComputedLevelWidth( int z ) {
+		return computedLevelWidths[z];
+	}
+	
+	public int getComputedLevelHeight( int z ) {
+		return computedLevelHeights[z];
+	}
+	
+	/**
+	 * @param z (int) index of the zoom level
+	 * @return (double) the scale at which the level is shown at its native size - its width relative to the largest level
+	 */
+	public double getZoomLevelScale( int z ) {
+		return levelScales[z];
+	}
 
 	public ZoomLevel getCurrentZoomLevel() {
 		return currentZoomLevel;
 	}
 	
+	public ZoomLevel getZoomLevel( int z ) {
+		if ( z < 0 || z >= numZoomLevels ) {
+			return null;
+		}
+		return zoomLevels.get( z );
+	}
+	
 	public ZoomLevel getHighestZoomLevel(){
 		return highestZoomLevel;
 	}
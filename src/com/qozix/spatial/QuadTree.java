@@ -0,0 +1,276 @@
+package com.qozix.spatial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+import android.graphics.Rect;
+
+/**
+ * A region quadtree of items by their bounds, in int pixels.  Adding, removing and querying (by rectangle or point)
+ * take O(log n) for reasonably spread out items.  The tree grows to fit whatever's added, so it doesn't need bounds
+ * up front.  Items are matched by identity and held once each - adding an item that's already there moves it.
+ * Bounds are copied when added, and edges are inclusive, so a point item can be added as a zero-size rectangle.
+ * Not thread safe.
+ */
+public class QuadTree<T> {
+
+	// entries a node holds before it splits into quadrants
+	private static final int NODE_CAPACITY = 8;
+	// nodes this small don't split, so stacks of items at the same spot don't recurse forever
+	private static final int MINIMUM_NODE_SIZE = 16;
+	private static final int INITIAL_SIZE = 1024;
+	// the root stops growing here - anything beyond it is held at the root
+	private static final int MAXIMUM_SIZE = 1 << 30;
+
+	private Node<T> root = new Node<T>( null, 0, 0, INITIAL_SIZE );
+	private IdentityHashMap<T, Entry<T>> entries = new IdentityHashMap<T, Entry<T>>();
+
+	/**
+	 * @param item (T) the item to add, or move if it's already in the tree
+	 * @param bounds (Rect) the item's bounds
+	 */
+	public void add( T item, Rect bounds ) {
+		add( item, bounds.left, bounds.top, bounds.right, bounds.bottom );
+	}
+
+	public void add( T item, int x, int y ) {
+		add( item, x, y, x, y );
+	}
+
+	public void add( T item, int left, int top, int right, int bottom ) {
+		Entry<T> entry = entries.get( item );
+		if ( entry == null ) {
+			entry = new Entry<T>( item );
+			entries.put( item, entry );
+		} else {
+			detach( entry );
+		}
+		entry.bounds.set( left, top, right, bottom );
+		grow( entry.bounds );
+		insert( root, entry );
+	}
+
+	/**
+	 * @param item (T) the item to remove
+	 * @return (boolean) true if the item was in the tree
+	 */
+	public boolean remove( T item ) {
+		Entry<T> entry = entries.remove( item );
+		if ( entry == null ) {
+			return false;
+		}
+		detach( entry );
+		return true;
+	}
+
+	public boolean contains( T item ) {
+		return entries.containsKey( item );
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Adds every item in the tree to the collection provided, in no particular order
+	 * @param results (Collection) collection to add the items to - it isn't cleared first
+	 */
+	public void getItems( Collection<? super T> results ) {
+		results.addAll( entries.keySet() );
+	}
+
+	public void clear() {
+		entries.clear();
+		root = new Node<T>( null, 0, 0, INITIAL_SIZE );
+	}
+
+	/**
+	 * Adds every item whose bounds touch the area to the collection provided, in no particular order
+	 * @param area (Rect) the area to search
+	 * @param results (Collection) collection to add matching items to - it isn't cleared first
+	 */
+	public void query( Rect area, Collection<? super T> results ) {
+		query( area.left, area.top, area.right, area.bottom, results );
+	}
+
+	public void query( int x, int y, Collection<? super T> results ) {
+		query( x, y, x, y, results );
+	}
+
+	public void query( int left, int top, int right, int bottom, Collection<? super T> results ) {
+		query( root, left, top, right, bottom, results );
+	}
+
+	private void query( Node<T> node, int left, int top, int right, int bottom, Collection<? super T> results ) {
+		for ( Entry<T> entry : node.entries ) {
+			Rect b = entry.bounds;
+			if ( b.left <= right && b.right >= left && b.top <= bottom && b.bottom >= top ) {
+				results.add( entry.item );
+			}
+		}
+		if ( node.children == null ) {
+			return;
+		}
+		for ( Node<T> child : node.children ) {
+			if ( child == null || child.count == 0 ) {
+				continue;
+			}
+			int extent = child.size;
+			if ( child.left <= right && child.left + extent >= left && child.top <= bottom && child.top + extent >= top ) {
+				query( child, left, top, right, bottom, results );
+			}
+		}
+	}
+
+	// doubles the root toward the bounds until they fit - the old root becomes one quadrant of the new one
+	private void grow( Rect bounds ) {
+		while ( !contains( root, bounds ) && root.size < MAXIMUM_SIZE ) {
+			int size = root.size;
+			boolean west = bounds.left < root.left;
+			boolean north = bounds.top < root.top;
+			int left = west ? root.left - size : root.left;
+			int top = north ? root.top - size : root.top;
+			Node<T> grown = new Node<T>( null, left, top, size << 1 );
+			grown.children = newChildren();
+			grown.children[( west ? 1 : 0 ) + ( north ? 2 : 0 )] = root;
+			grown.count = root.count;
+			root.parent = grown;
+			root = grown;
+		}
+	}
+
+	private void insert( Node<T> node, Entry<T> entry ) {
+		while ( true ) {
+			node.count++;
+			if ( node.children != null ) {
+				int quadrant = getQuadrant( node, entry.bounds );
+				if ( quadrant > -1 ) {
+					node = getChild( node, quadrant );
+					continue;
+				}
+			}
+			node.entries.add( entry );
+			entry.node = node;
+			if ( node.children == null ) {
+				split( node );
+			}
+			return;
+		}
+	}
+
+	// moves whatever fits in a quadrant down a level, once a node is over capacity
+	private void split( Node<T> node ) {
+		if ( node.entries.size() <= NODE_CAPACITY || node.size <= MINIMUM_NODE_SIZE ) {
+			return;
+		}
+		node.children = newChildren();
+		ArrayList<Entry<T>> kept = new ArrayList<Entry<T>>();
+		for ( Entry<T> entry : node.entries ) {
+			int quadrant = getQuadrant( node, entry.bounds );
+			if ( quadrant == -1 ) {
+				kept.add( entry );
+				continue;
+			}
+			Node<T> child = getChild( node, quadrant );
+			child.count++;
+			child.entries.add( entry );
+			entry.node = child;
+		}
+		node.entries = kept;
+		for ( Node<T> child : node.children ) {
+			if ( child != null ) {
+				split( child );
+			}
+		}
+	}
+
+	private void detach( Entry<T> entry ) {
+		Node<T> node = entry.node;
+		node.entries.remove( entry );
+		entry.node = null;
+		for ( Node<T> n = node; n != null; n = n.parent ) {
+			n.count--;
+			// nothing's left below, so the quadrants can go
+			if ( n.children != null && n.count == n.entries.size() ) {
+				n.children = null;
+			}
+		}
+	}
+
+	// the quadrant (0 nw, 1 ne, 2 sw, 3 se) that holds the bounds entirely, or -1 if they span quadrants or the node
+	private int getQuadrant( Node<T> node, Rect bounds ) {
+		if ( !contains( node, bounds ) ) {
+			return -1;
+		}
+		int half = node.size >> 1;
+		int middleX = node.left + half;
+		int middleY = node.top + half;
+		int x;
+		if ( bounds.right <= middleX ) {
+			x = 0;
+		} else if ( bounds.left >= middleX ) {
+			x = 1;
+		} else {
+			return -1;
+		}
+		int y;
+		if ( bounds.bottom <= middleY ) {
+			y = 0;
+		} else if ( bounds.top >= middleY ) {
+			y = 2;
+		} else {
+			return -1;
+		}
+		return x + y;
+	}
+
+	private Node<T> getChild( Node<T> node, int quadrant ) {
+		Node<T> child = node.children[quadrant];
+		if ( child == null ) {
+			int half = node.size >> 1;
+			int left = node.left + ( quadrant & 1 ) * half;
+			int top = node.top + ( quadrant >> 1 ) * half;
+			child = new Node<T>( node, left, top, half );
+			node.children[quadrant] = child;
+		}
+		return child;
+	}
+
+	private boolean contains( Node<T> node, Rect bounds ) {
+		return bounds.left >= node.left && bounds.top >= node.top
+			&& bounds.right <= node.left + node.size && bounds.bottom <= node.top + node.size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Node<T>[] newChildren() {
+		return new Node[4];
+	}
+
+	private static class Node<T> {
+		Node<T> parent;
+		final int left;
+		final int top;
+		final int size;
+		// entries held here (not in a quadrant), and in this node's whole subtree
+		ArrayList<Entry<T>> entries = new ArrayList<Entry<T>>();
+		int count;
+		Node<T>[] children;
+		Node( Node<T> p, int l, int t, int s ) {
+			parent = p;
+			left = l;
+			top = t;
+			size = s;
+		}
+	}
+
+	private static class Entry<T> {
+		final T item;
+		final Rect bounds = new Rect();
+		Node<T> node;
+		Entry( T i ) {
+			item = i;
+		}
+	}
+
+}